@@ -0,0 +1,246 @@
+package simulation;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class holds the JMH benchmarks of the hot paths of the
+ * headless engine: building the contact graph, exposing the
+ * neighbors of a sick agent, moving agents in the Counters from
+ * several threads, and stepping a whole day at 1k, 100k and 1M
+ * agents. The states are built in setup methods, so only the
+ * operation itself is measured. Operations that need a fresh
+ * state are made long enough for JMH to time them on their
+ * own: one invocation exposes the neighbors of many agents, and
+ * the days of an outbreak are timed in single shot batches.
+ * Build with mvn package in the bench folder and run with
+ * java -jar target/benchmarks.jar -rf json -rff results.json
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Microbenchmarks {
+    //agents that expose their neighbors in one invocation
+    private static final int SPREADING = 2000;
+    //days stepped in one batch, every outbreak lasts longer
+    private static final int DAYS = 50;
+
+    /**
+     * Return a config of n agents at random positions,
+     * in an area that grows with n so the number of
+     * neighbors per agent stays about the same
+     * @param n the number of agents
+     * @param distance the exposure distance
+     * @return the config
+     */
+    private static Main randomConfig(int n, int distance) {
+        int side = (int)Math.sqrt(n*400.0);
+        Main config = new Main();
+        config.configure("dimensions " + side + " " + side);
+        config.configure("exposuredistance " + distance);
+        config.configure("random " + n);
+        config.configure("initialsick " + Math.max(1,n/100));
+        return config;
+    }
+
+    /**
+     * Agents at random positions and on a grid of about n cells
+     */
+    @State(Scope.Benchmark)
+    public static class Placed {
+        @Param({"1000", "100000", "1000000"})
+        public int n;
+
+        private Population random;
+        private Population grid;
+        private int cells;
+
+        /**
+         * Place the agents
+         */
+        @Setup(Level.Trial)
+        public void place() {
+            random = new Simulation(randomConfig(n,20)).getPopulation();
+            int side = (int)Math.sqrt(n);
+            Main config = new Main();
+            config.configure("exposuredistance 20");
+            config.configure("grid " + side + " " + side);
+            grid = new Simulation(config).getPopulation();
+            cells = side*side;
+        }
+    }
+
+    /**
+     * SPREADING agents of 100k got sick, with about 30 or
+     * about 280 neighbors per agent
+     */
+    @State(Scope.Thread)
+    public static class Seeded {
+        @Param({"20", "60"})
+        public int distance;
+
+        private Simulation simulation;
+
+        /**
+         * Place the agents and build their contact graph
+         */
+        @Setup(Level.Trial)
+        public void place() {
+            Main config = new Main();
+            config.configure("dimensions 2000 2000");
+            config.configure("exposuredistance " + distance);
+            config.configure("random 100000");
+            config.configure("initialsick " + SPREADING);
+            simulation = new Simulation(config);
+        }
+
+        /**
+         * Start a fresh run and make its agents sick, with the
+         * neighbors not exposed yet
+         */
+        @Setup(Level.Invocation)
+        public void seed() {
+            simulation.reset(simulation.getSeed()+1);
+            simulation.seedStates();
+        }
+    }
+
+    /**
+     * An outbreak of n agents, started again on the same
+     * graph before each batch of days
+     */
+    @State(Scope.Thread)
+    public static class Outbreak {
+        @Param({"1000", "100000", "1000000"})
+        public int n;
+
+        private Simulation simulation;
+
+        /**
+         * Place the agents
+         */
+        @Setup(Level.Trial)
+        public void place() {
+            simulation = new Simulation(randomConfig(n,20));
+        }
+
+        /**
+         * Start a new outbreak for the next batch
+         */
+        @Setup(Level.Iteration)
+        public void restart() {
+            simulation.reset(simulation.getSeed()+1);
+            simulation.seed();
+        }
+    }
+
+    /**
+     * Counters shared by all benchmark threads
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+        private final Counters counters = new Counters();
+
+        /**
+         * Start the counters at zero agents
+         */
+        @Setup(Level.Trial)
+        public void reset() {
+            counters.reset(0);
+        }
+    }
+
+    /**
+     * Contact graph construction from random agent positions,
+     * what used to be the pairwise loops of the display
+     * @param placed the agents
+     * @return the graph
+     */
+    @Benchmark
+    public ContactGraph neighborsRandom(Placed placed) {
+        SpatialIndex index = new SpatialIndex(placed.random.xs(),
+                                placed.random.ys(),placed.n,20);
+        return ContactGraph.build(index,placed.n,20,false,false);
+    }
+
+    /**
+     * Contact graph construction of a grid
+     * @param placed the agents
+     * @return the graph
+     */
+    @Benchmark
+    public ContactGraph neighborsGrid(Placed placed) {
+        SpatialIndex index = new SpatialIndex(placed.grid.xs(),
+                                placed.grid.ys(),placed.cells,20);
+        return ContactGraph.build(index,placed.cells,20,true,false);
+    }
+
+    /**
+     * Exposing all neighbors of a sick agent
+     * @param seeded the run with the sick agents
+     * @return the run
+     */
+    @Benchmark
+    @OperationsPerInvocation(SPREADING)
+    public Simulation exposureFanOut(Seeded seeded) {
+        seeded.simulation.exposeNeighbors();
+        return seeded.simulation;
+    }
+
+    /**
+     * One simulated day of an outbreak, each iteration is a
+     * batch of the first DAYS days of a new outbreak
+     * @param outbreak the run
+     * @return the run
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10, batchSize = DAYS)
+    @Measurement(iterations = 20, batchSize = DAYS)
+    public Simulation daySteps(Outbreak outbreak) {
+        outbreak.simulation.step();
+        return outbreak.simulation;
+    }
+
+    /**
+     * Counter moves from 1 thread
+     * @param shared the counters
+     * @return the counters
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Counters countersMove(Shared shared) {
+        shared.counters.move(Counters.VULNERABLE,Counters.SICK);
+        shared.counters.move(Counters.SICK,Counters.VULNERABLE);
+        return shared.counters;
+    }
+
+    /**
+     * Counter moves from one thread per available processor
+     * @param shared the counters
+     * @return the counters
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(Threads.MAX)
+    public Counters countersMoveShared(Shared shared) {
+        return countersMove(shared);
+    }
+}
@@ -0,0 +1,220 @@
+package simulation;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * This class runs the headless engine end to end on generated
+ * random, grid and randomgrid configs of growing size, from
+ * 1k agents up to 10M, and prints one row per config: the setup
+ * time (placement, contact graph, seeding) and the run time, the
+ * number of simulated agent-days per second, the peak of the used
+ * heap sampled every few milliseconds during setup and run, and
+ * the number and total time of garbage collections.
+ * The density is the same at every size, so the rows form a
+ * scaling curve. A size that runs out of memory is reported as
+ * such and the larger sizes of that placement are skipped.
+ * Usage: java simulation.ScaleBenchmark [-max n] [-days d] [-o file.csv]
+ */
+public class ScaleBenchmark {
+    private static final String[] LAYOUTS = {"random","grid","randomgrid"};
+    private static final int DISTANCE = 20;
+    private static final int SAMPLE_MS = 5;
+
+    /**
+     * Samples the used heap while a config runs, since the
+     * pools peak at different times and their peaks can't
+     * be added up
+     */
+    private static class HeapSampler extends Thread {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private volatile boolean running = true;
+        private long peak = 0;
+
+        /**
+         * Constructor for the sampler, call start to begin sampling
+         */
+        HeapSampler() {
+            super("heap sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while(running) {
+                try {
+                    sample();
+                } catch (OutOfMemoryError e) {
+                    //the run is failing too, its row reports it
+                }
+                try {
+                    Thread.sleep(SAMPLE_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Record the used heap if it is the highest so far
+         */
+        private void sample() {
+            peak = Math.max(peak,memory.getHeapMemoryUsage().getUsed());
+        }
+
+        /**
+         * Stop sampling and return the peak
+         * @return the highest used heap seen, in bytes
+         */
+        long finish() {
+            running = false;
+            interrupt();
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+            return peak;
+        }
+    }
+
+    /**
+     * Run every layout at every size up to the maximum
+     * @param args -max the largest number of agents, 10M by default,
+     *             -days the day limit of each run, 100 by default,
+     *             -o the CSV file, standard output if not given
+     * @throws FileNotFoundException
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        int max = 10_000_000;
+        int days = 100;
+        String output = null;
+        for(int i=0;i+1<args.length;i+=2) {
+            switch (args[i]) {
+                case "-max":
+                    max = Integer.parseInt(args[i+1]);
+                    break;
+                case "-days":
+                    days = Integer.parseInt(args[i+1]);
+                    break;
+                case "-o":
+                    output = args[i+1];
+                    break;
+            }
+        }
+        PrintStream out = output==null ? System.out : new PrintStream(output);
+        out.println("layout,agents,setup_ms,run_ms,days,agent_days_per_s," +
+                "peak_heap_mb,gc_count,gc_ms");
+        for(String layout:LAYOUTS) {
+            for(int n=1_000;n<=max;n*=10) {
+                String row = run(config(layout,n,days),layout,n);
+                out.println(row);
+                out.flush();
+                if(row.contains("out of memory")) {
+                    break;
+                }
+            }
+        }
+        if(out!=System.out) {
+            out.close();
+        }
+    }
+
+    /**
+     * Generate a config with about n agents and about
+     * three neighbors per agent
+     * @param layout random, grid or randomgrid
+     * @param n the number of agents
+     * @param days the day limit
+     * @return the config
+     */
+    private static Main config(String layout, int n, int days) {
+        Main config = new Main();
+        config.configure("exposuredistance " + DISTANCE);
+        config.configure("days " + days);
+        config.configure("initialsick " + Math.max(1,n/1000));
+        if(layout.equals("grid")) {
+            int side = (int)Math.round(Math.sqrt(n));
+            config.configure("grid " + side + " " + side);
+        }
+        else if(layout.equals("randomgrid")) {
+            //half of the cells get an agent
+            int side = (int)Math.ceil(Math.sqrt(2.0*n));
+            config.configure("dimensions " + side*DISTANCE + " " +
+                                side*DISTANCE);
+            config.configure("randomgrid " + side + " " + side + " " + n);
+        }
+        else {
+            int side = (int)Math.sqrt(n*400.0);
+            config.configure("dimensions " + side + " " + side);
+            config.configure("random " + n);
+        }
+        return config;
+    }
+
+    /**
+     * Run one config and measure it
+     * @param config the config
+     * @param layout the layout name
+     * @param n the requested number of agents
+     * @return the CSV row
+     */
+    private static String run(Main config, String layout, int n) {
+        System.gc();
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+        try {
+            long start = System.nanoTime();
+            Simulation simulation = new Simulation(config);
+            simulation.seed();
+            long setup = System.nanoTime()-start;
+            start = System.nanoTime();
+            simulation.run(config.getMaxDays());
+            long run = System.nanoTime()-start;
+            double agentDays = (double)simulation.size()*simulation.getDay();
+            return layout + "," + simulation.size() + "," +
+                    setup/1_000_000 + "," + run/1_000_000 + "," +
+                    simulation.getDay() + "," +
+                    Math.round(agentDays/(run/1e9)) + "," +
+                    heap.finish()/(1024*1024) + "," +
+                    (gcCount()-gcCount) + "," + (gcTime()-gcTime);
+        } catch (OutOfMemoryError e) {
+            //the rate column says why the others are empty
+            return layout + "," + n + ",,,,out of memory," +
+                    heap.finish()/(1024*1024) + "," +
+                    (gcCount()-gcCount) + "," + (gcTime()-gcTime);
+        }
+    }
+
+    /**
+     * Return the number of collections of all collectors
+     * @return collections so far
+     */
+    private static long gcCount() {
+        long count = 0;
+        for(GarbageCollectorMXBean gc:
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0,gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Return the collection time of all collectors
+     * @return milliseconds so far
+     */
+    private static long gcTime() {
+        long time = 0;
+        for(GarbageCollectorMXBean gc:
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0,gc.getCollectionTime());
+        }
+        return time;
+    }
+}
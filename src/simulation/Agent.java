@@ -1,30 +1,42 @@
 package simulation;
 
-import javafx.application.Platform;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import static java.lang.Thread.sleep;
 
 /**
  * This class handles each of the agents and the
  * updates based on exposure
- * Implements runnable and runs on a new thread
- * when created in Display
+ * Implements runnable and runs on its own thread when
+ * started by the AgentExecutor, or is stepped by the
+ * executor's worker pool in the pooled mode
+ * The agent's AgentState is a single atomic field, every
+ * transition is a compare and set from the expected state,
+ * so an agent can only be exposed once and repeated
+ * exposures from sick neighbors are dropped without any
+ * message being queued.
  */
 public class Agent implements Runnable {
-    private BlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger state =
+            new AtomicInteger(AgentState.VULNERABLE);
     private int agentID;
-    private boolean alive = true;
-    private boolean exposed = false;
-    private boolean immune = false;
-    private boolean sick = false;
+    private volatile boolean alive = true;
     private Display display;
-    private Circle circle = new Circle(10,10,5);
-    private List<Agent> neighbors = new ArrayList<>();
+    private final Counters counters;
+    //the agent's own random stream, shared by no other thread
+    private SplittableRandom random;
+    private final float x;
+    private final float y;
+    //neighbors are looked up in the shared contact graph,
+    //index is also the agent's position for the renderer
+    private ContactGraph contacts;
+    private Agent[] agents;
+    private int index;
+    //set when the agent is stepped by a worker pool
+    private AgentExecutor executor;
+    //the agent's own thread, woken when it gets exposed
+    private volatile Thread thread;
 
     /**
      * Constructor for the agent class
@@ -33,173 +45,191 @@ public class Agent implements Runnable {
      * @param display the application display
      * @param ID the agent ID number
      */
-    public Agent(int x,int y,Display display,int ID) {
+    public Agent(float x,float y,Display display,int ID) {
         this.display=display;
+        this.counters=display.getCounters();
+        this.random=RandomStreams.stream(display.getSeed(),ID);
         this.agentID = ID;
-        circle.setCenterX(x);
-        circle.setCenterY(y);
-        //set the color to green for vulnerable
-        Platform.runLater(()-> {
-
-            circle.setFill(Color.rgb(0,255,0));
-        });
+        this.x = x;
+        this.y = y;
     }
 
     /**
      * This is the run method for the agent.
      * This method keeps running until the alive boolean
-     * is set to false. While the agent is alive,
-     * check for messages to the BlockingQueue and
-     * parse them accordingly
+     * is set to false. While the agent is vulnerable it
+     * parks until a state change wakes it up, then sleeps
+     * through the incubation and sickness periods.
      */
     @Override
     public void run() {
+        thread = Thread.currentThread();
         while(alive) {
-            try {
-                //wait for Queue message
-                Integer message = queue.take();
-                //Message 0 = Agent is initially sick
-                if(message==0) {
-                    //set color to red
-                    Platform.runLater(()-> {
-                        circle.setFill(Color.rgb(255,0,0));
-                    });
-                    //Added a check to prevent events from the previous sim
-                    //from being added to the restarted sim
-                    if(alive) {
-                        //Display event message
-                        Platform.runLater(() -> {
-                            display.addEvent("Agent " + agentID +
-                                                " was sick at the start");
-                        });
-                        //set variable and adjust counters
-                        sick = true;
-                        Counters.incrementSick();
-                        Counters.decrementVulnerable();
-                    }
-                }
-                //Message 1 = agent was exposed to sick neighbor
-                if(message==1) {
-                    if (!exposed && !immune && !sick) {
-                        exposed = true;
-                    }
-                }
-                //Message 2 = Agent is immune at the start of the sim
-                else if(message==2) {
-                    //set variables and adjust counters
-                    immune = true;
-                    Counters.incrementImmune();
-                    Counters.decrementVulnerable();
-                    //set color to blue for immune
-                    Platform.runLater(()-> {
-                        circle.setFill(Color.rgb(0,0,255));
-                    });
-                }
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            if(exposed && !immune) {
+            int current = state.get();
+            if(current==AgentState.EXPOSED) {
                 //sleep for the incubation period
                 try {
                     sleep(display.getIncubation()*1000);
                 } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    //the agent was stopped
+                    return;
+                }
+                becomeSick();
+            }
+            else if(current==AgentState.SICK) {
+                exposeNeighbors();
+                //sleep for sickness time
+                try {
+                    sleep(display.getSickness() * 1000);
+                } catch (InterruptedException e) {
+                    //the agent was stopped
+                    return;
                 }
-                //after incubation,set color to red
-                Platform.runLater(()-> {
-                    circle.setFill(Color.rgb(255,0,0));
-                });
-                if(alive) {
-                    //Add event to the text field
-                    Platform.runLater(() -> {
-                        display.addEvent("Agent " + agentID +
-                                        " got sick on day "
-                                        + Counters.getDays());
-                    });
-                    //set variables and adjust counters
-                    sick = true;
-                    Counters.incrementSick();
-                    Counters.decrementVulnerable();
+                if (alive) {
+                    dieOrRecover();
                 }
+            }
+            else if(current==AgentState.VULNERABLE) {
+                //wait for a state change, park can return
+                //spuriously so the state is checked again
+                LockSupport.park(this);
+            }
+            else {
+                //nothing can happen to immune or dead agents
+                return;
+            }
+        }
+    }
 
+    /**
+     * Wake the agent after it got exposed or sick from outside.
+     * In the pooled mode this schedules the next timer on
+     * the worker pool instead of unparking a thread.
+     */
+    private void wake() {
+        if(executor==null) {
+            LockSupport.unpark(thread);
+        }
+        else if(state.get()==AgentState.EXPOSED) {
+            executor.schedule(this::incubationOver,
+                                display.getIncubation()*1000L);
+        }
+        else {
+            sicknessStarted();
+        }
+    }
+
+    /**
+     * Pooled mode: the incubation period is over
+     */
+    private void incubationOver() {
+        if(alive) {
+            becomeSick();
+            sicknessStarted();
+        }
+    }
+
+    /**
+     * Pooled mode: expose the neighbors and start
+     * the timer for the sickness period
+     */
+    private void sicknessStarted() {
+        exposeNeighbors();
+        executor.schedule(() -> {
+            if(alive) {
+                dieOrRecover();
             }
-            if(sick) {
-                if(alive) {
-                    //Send an exposure message to neighboring agents
-                    for (Agent agent : neighbors) {
-                        Platform.runLater(() -> {
-                            agent.setExposed();
-                        });
-                    }
-                    //sleep for sickness time
-                    try {
-                        sleep(display.getSickness() * 1000);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                    if (alive) {
-                        //generate a random number to check
-                        //whether agent dies or recovers
-                        double x = Math.random();
-                        //if x>recover set color to black for dead
-                        if (x > display.getRecover()) {
-                            Platform.runLater(() -> {
-                                circle.setFill(Color.rgb(0, 0, 0));
-                            });
-                            //add event to the textfield
-                            Platform.runLater(() -> {
-                                display.addEvent("Agent " + agentID +
-                                        "died on day " + Counters.getDays());
-                            });
-                            //set variables and adjust counters
-                            alive = false;
-                            sick = false;
-                            exposed = false;
-                            Counters.decrementSick();
-                            Counters.incrementDead();
-                        }
-                        //if agent recovers
-                        else {
-                            if (alive) {
-                                //set color to blue for immune
-                                Platform.runLater(() -> {
-                                    circle.setFill(Color.rgb(0, 0, 255));
-                                });
-                                //add event to text field
-                                Platform.runLater(() -> {
-                                    display.addEvent("Agent " + agentID +
-                                            " recovered on day " +
-                                            Counters.getDays());
-                                });
-                                //set variables and adjust counters
-                                Counters.decrementSick();
-                                Counters.incrementImmune();
-                                sick = false;
-                                immune = true;
-                                exposed = false;
-                            }
-                        }
-                    }
-                }
+        }, display.getSickness()*1000L);
+    }
 
+    /**
+     * Turn the agent sick after the incubation period
+     */
+    private void becomeSick() {
+        //Added a check to prevent events from the previous sim
+        //from being added to the restarted sim
+        if(alive && state.compareAndSet(AgentState.EXPOSED,
+                                            AgentState.SICK)) {
+            //after incubation, redraw the agent red
+            display.markDirty(index);
+            //add event to the event log
+            display.addEvent(agentID,counters.getDays(),EventLog.SICK);
+            //adjust counters
+            counters.move(Counters.VULNERABLE,Counters.SICK);
+        }
+    }
+
+    /**
+     * Send an exposure to neighboring agents
+     */
+    private void exposeNeighbors() {
+        if(contacts==null) {
+            return;
+        }
+        int[] offsets = contacts.getOffsets();
+        int[] targets = contacts.getTargets();
+        for (int e=offsets[index];e<offsets[index+1];e++) {
+            //exposures go straight to the neighbor's atomic
+            //state on this thread, not through the FX thread
+            agents[targets[e]].setExposed();
+        }
+    }
+
+    /**
+     * Decide whether the agent dies or recovers
+     * at the end of the sickness period
+     */
+    private void dieOrRecover() {
+        //generate a random number to check
+        //whether agent dies or recovers
+        double x = random.nextDouble();
+        //if x>recover set color to black for dead
+        if (x > display.getRecover()) {
+            if(!state.compareAndSet(AgentState.SICK,AgentState.DEAD)) {
+                return;
             }
+            //redraw the agent black for dead
+            display.markDirty(index);
+            //add event to the event log
+            display.addEvent(agentID,counters.getDays(),EventLog.DIED);
+            //set variables and adjust counters
+            alive = false;
+            counters.move(Counters.SICK,Counters.DEAD);
+        }
+        //if agent recovers
+        else {
+            if(!state.compareAndSet(AgentState.SICK,AgentState.IMMUNE)) {
+                return;
+            }
+            //redraw the agent blue for immune
+            display.markDirty(index);
+            //add event to the event log
+            display.addEvent(agentID,counters.getDays(),EventLog.RECOVERED);
+            //adjust counters
+            counters.move(Counters.SICK,Counters.IMMUNE);
         }
     }
 
     /**
-     * Return the agents Circle
-     * @return circle
+     * Step the agent on a worker pool instead of a thread.
+     * Called by the AgentExecutor in the pooled mode.
+     * @param executor the executor that owns the worker pool
      */
-    public Circle getCircle() {
-        return circle;
+    public void attach(AgentExecutor executor) {
+        this.executor = executor;
     }
 
     /**
-     * Add a neighboring agent to this agents list
-     * @param agent the neighboring agent
+     * Set where this agent finds its neighbors
+     * @param contacts the full contact graph of all agents
+     * @param agents all agents, in contact graph order
+     * @param index this agent's index in the contact graph
      */
-    public void addNeighbor(Agent agent) {
-        this.neighbors.add(agent);
+    public void setContacts(ContactGraph contacts, Agent[] agents,
+                            int index) {
+        this.contacts = contacts;
+        this.agents = agents;
+        this.index = index;
     }
 
     /**
@@ -207,7 +237,7 @@ public class Agent implements Runnable {
      * @return the x position
      */
     public double getXPosition() {
-        return circle.getCenterX();
+        return x;
     }
 
     /**
@@ -215,7 +245,15 @@ public class Agent implements Runnable {
      * @return the y position
      */
     public double getYPosition() {
-        return circle.getCenterY();
+        return y;
+    }
+
+    /**
+     * Return the current state of the agent
+     * @return the AgentState
+     */
+    public int getState() {
+        return state.get();
     }
 
     /**
@@ -223,38 +261,83 @@ public class Agent implements Runnable {
      * @return immune
      */
     public boolean getImmune() {
-        return  immune;
+        return state.get()==AgentState.IMMUNE;
     }
 
     /**
-     * Send an initialSick message to the
-     * agent
+     * Make the agent sick at the start of the simulation
      */
     public void initialSick() {
-        queue.add(0);
+        if(alive && state.compareAndSet(AgentState.VULNERABLE,
+                                            AgentState.SICK)) {
+            //redraw the agent red
+            display.markDirty(index);
+            //add event to the event log
+            display.addEvent(agentID,0,EventLog.SICK_AT_START);
+            //adjust counters
+            counters.move(Counters.VULNERABLE,Counters.SICK);
+            wake();
+        }
     }
 
     /**
-     * Send an exposure message to the agent
+     * Expose the agent to a sick neighbor. Only the first
+     * exposure of a vulnerable agent changes anything.
      */
     public void setExposed() {
-        queue.add(1);
+        if(state.compareAndSet(AgentState.VULNERABLE,AgentState.EXPOSED)) {
+            wake();
+        }
     }
 
     /**
-     * Send an immunity message to the agent
+     * Make the agent immune at the start of the simulation
      */
     public void setImmune() {
-        queue.add(2);
-        immune=true;
+        if(state.compareAndSet(AgentState.VULNERABLE,AgentState.IMMUNE)) {
+            //adjust counters
+            counters.move(Counters.VULNERABLE,Counters.IMMUNE);
+            //redraw the agent blue for immune
+            display.markDirty(index);
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Make the agent dead at the start of the simulation,
+     * for a population file that has dead agents
+     */
+    public void setDead() {
+        if(state.compareAndSet(AgentState.VULNERABLE,AgentState.DEAD)) {
+            //adjust counters
+            counters.move(Counters.VULNERABLE,Counters.DEAD);
+            //redraw the agent for dead
+            display.markDirty(index);
+            LockSupport.unpark(thread);
+        }
     }
 
     /**
      * Stop the main loop from running.
+     * The AgentExecutor interrupts and waits for the thread.
      */
     public void stop()
     {
         alive = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Make the agent vulnerable again for another run,
+     * keeping its position and neighbors. Only call this
+     * once the AgentExecutor stopped the previous run.
+     * @param seed the seed of the new run
+     */
+    public void reset(long seed) {
+        state.set(AgentState.VULNERABLE);
+        random = RandomStreams.stream(seed,agentID);
+        thread = null;
+        alive = true;
     }
 
 }
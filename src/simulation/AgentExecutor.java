@@ -0,0 +1,143 @@
+package simulation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class decides what the agents run on.
+ * PLATFORM starts one OS thread per agent like before,
+ * VIRTUAL starts one virtual thread per agent, and POOLED
+ * runs the agents' timers on a small pool of worker
+ * threads, so no agent owns a thread at all.
+ * Shutting the executor down stops all of its agents'
+ * threads and timers and waits for them, so nothing of
+ * a run is left running once a new one starts.
+ */
+public class AgentExecutor {
+
+    /**
+     * The selectable execution modes
+     */
+    public enum Mode {
+        PLATFORM,
+        VIRTUAL,
+        POOLED
+    }
+
+    //Thread.startVirtualThread, looked up by reflection
+    //since it only exists from Java 21 on
+    private static final Method START_VIRTUAL = findStartVirtual();
+
+    private final Mode mode;
+    private final ScheduledExecutorService pool;
+    //the agent threads of PLATFORM and VIRTUAL
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * Constructor for the executor
+     * @param mode the execution mode
+     * @param workers the number of worker threads for POOLED
+     */
+    public AgentExecutor(Mode mode, int workers) {
+        if(mode==Mode.VIRTUAL && START_VIRTUAL==null) {
+            System.err.println("Virtual threads need Java 21, " +
+                    "using platform threads");
+            mode = Mode.PLATFORM;
+        }
+        this.mode = mode;
+        if(mode==Mode.POOLED) {
+            pool = Executors.newScheduledThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable,"agent-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else {
+            pool = null;
+        }
+    }
+
+    /**
+     * Start running an agent
+     * @param agent the agent to start
+     */
+    public void start(Agent agent) {
+        switch (mode) {
+            case PLATFORM:
+                Thread agentThread = new Thread(agent);
+                agentThread.start();
+                threads.add(agentThread);
+                break;
+            case VIRTUAL:
+                try {
+                    threads.add((Thread)START_VIRTUAL.invoke(null,agent));
+                } catch (IllegalAccessException |
+                         InvocationTargetException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
+            case POOLED:
+                agent.attach(this);
+                break;
+        }
+    }
+
+    /**
+     * Run a task on the worker pool after a delay
+     * @param task the task to run
+     * @param millis the delay in milliseconds
+     */
+    public void schedule(Runnable task, long millis) {
+        pool.schedule(task,millis,TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the worker pool and the agent threads and wait until
+     * they are done. Pending agent timers are dropped and agents
+     * sleeping or waiting are interrupted, so this only takes
+     * as long as the agents need to finish what they are doing.
+     * Stop the agents first so they don't start anything new.
+     */
+    public void shutdown() {
+        for(Thread thread:threads) {
+            thread.interrupt();
+        }
+        if(pool!=null) {
+            pool.shutdownNow();
+        }
+        try {
+            for(Thread thread:threads) {
+                thread.join();
+            }
+            if(pool!=null) {
+                pool.awaitTermination(1,TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        threads.clear();
+    }
+
+    /**
+     * Look up Thread.startVirtualThread
+     * @return the method, or null if it is not available
+     */
+    private static Method findStartVirtual() {
+        //on Java 19 and 20 virtual threads are a preview
+        //feature and fail unless preview is enabled
+        if(Runtime.version().feature()<21) {
+            return null;
+        }
+        try {
+            return Thread.class.getMethod("startVirtualThread",
+                                            Runnable.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
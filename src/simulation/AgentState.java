@@ -0,0 +1,39 @@
+package simulation;
+
+/**
+ * This class holds the possible states of an agent
+ * as small constants, so the simulation engine can keep
+ * them in primitive arrays instead of agent objects.
+ */
+public final class AgentState {
+    public static final byte VULNERABLE = 0;
+    public static final byte EXPOSED = 1;
+    public static final byte SICK = 2;
+    public static final byte IMMUNE = 3;
+    public static final byte DEAD = 4;
+
+    private AgentState() {
+    }
+
+    /**
+     * Return a readable name for a state
+     * @param state the state constant
+     * @return the name of the state
+     */
+    public static String name(int state) {
+        switch (state) {
+            case VULNERABLE:
+                return "vulnerable";
+            case EXPOSED:
+                return "exposed";
+            case SICK:
+                return "sick";
+            case IMMUNE:
+                return "immune";
+            case DEAD:
+                return "dead";
+            default:
+                return "unknown";
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package simulation;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * This class draws all agents on a single Canvas instead
+ * of one Circle node per agent. Agents that changed state
+ * are put on a dirty list from any thread, and at most
+ * maxFps times a second the renderer reads the current
+ * state of just those agents and redraws them.
+ */
+public class CanvasRenderer {
+    private static final double RADIUS = 5;
+    //colors indexed by AgentState, exposed agents still look vulnerable
+    private static final Color[] COLORS = {
+            Color.rgb(0,255,0),
+            Color.rgb(0,255,0),
+            Color.rgb(255,0,0),
+            Color.rgb(0,0,255),
+            Color.rgb(0,0,0)
+    };
+
+    private final Canvas canvas;
+    private final GraphicsContext graphics;
+    private final long frameNanos;
+    private final AnimationTimer timer;
+    private long lastFrame = 0;
+
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private IntUnaryOperator states = i -> AgentState.VULNERABLE;
+
+    //agents to redraw in the next frame, swapped with drawing
+    private int[] dirty = new int[64];
+    private int dirtyCount = 0;
+    private int[] drawing = new int[64];
+    private boolean[] queued = new boolean[0];
+
+    /**
+     * Constructor for the renderer
+     * @param width the canvas width
+     * @param height the canvas height
+     * @param maxFps the highest number of frames drawn per second
+     */
+    public CanvasRenderer(double width, double height, int maxFps) {
+        canvas = new Canvas(width,height);
+        graphics = canvas.getGraphicsContext2D();
+        frameNanos = 1_000_000_000L/Math.max(1,maxFps);
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if(now-lastFrame>=frameNanos) {
+                    lastFrame = now;
+                    frame();
+                }
+            }
+        };
+    }
+
+    /**
+     * Return the canvas to add to the scene
+     * @return canvas
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * Start drawing the agents from a new population,
+     * on the JavaFX thread. Every agent is drawn once.
+     * @param x the x positions of the agents
+     * @param y the y positions of the agents
+     * @param states returns the current AgentState of an agent
+     */
+    public void show(float[] x, float[] y, IntUnaryOperator states) {
+        graphics.clearRect(0,0,canvas.getWidth(),canvas.getHeight());
+        synchronized (this) {
+            this.x = x;
+            this.y = y;
+            this.states = states;
+            queued = new boolean[x.length];
+            dirtyCount = 0;
+            for(int i=0;i<x.length;i++) {
+                markDirty(i);
+            }
+        }
+        timer.start();
+    }
+
+    /**
+     * Return the number of agents waiting to be redrawn
+     * @return the length of the dirty list
+     */
+    public synchronized int getBacklog() {
+        return dirtyCount;
+    }
+
+    /**
+     * Draw every agent of the current population again, after
+     * their states were reset in place, from any thread
+     */
+    public synchronized void redrawAll() {
+        if(x==null) {
+            return;
+        }
+        for(int i=0;i<x.length;i++) {
+            markDirty(i);
+        }
+    }
+
+    /**
+     * Put an agent on the dirty list, from any thread
+     * @param i the agent index
+     */
+    public synchronized void markDirty(int i) {
+        if(i>=queued.length || queued[i]) {
+            return;
+        }
+        queued[i] = true;
+        if(dirtyCount==dirty.length) {
+            int[] grown = new int[dirty.length*2];
+            System.arraycopy(dirty,0,grown,0,dirtyCount);
+            dirty = grown;
+        }
+        dirty[dirtyCount++] = i;
+    }
+
+    /**
+     * Redraw the agents on the dirty list with their state
+     * as it is now, on the JavaFX thread
+     */
+    private void frame() {
+        SimulationEvents.RenderFrame drawn = SimulationEvents.recording()
+                ? new SimulationEvents.RenderFrame() : null;
+        SimulationEvents.begin(drawn);
+        int count;
+        float[] px;
+        float[] py;
+        IntUnaryOperator current;
+        synchronized (this) {
+            int[] swap = drawing;
+            drawing = dirty;
+            dirty = swap.length>=drawing.length ? swap
+                                                : new int[drawing.length];
+            count = dirtyCount;
+            dirtyCount = 0;
+            for(int k=0;k<count;k++) {
+                queued[drawing[k]] = false;
+            }
+            px = x;
+            py = y;
+            current = states;
+        }
+        for(int k=0;k<count;k++) {
+            int i = drawing[k];
+            graphics.setFill(COLORS[current.applyAsInt(i)]);
+            graphics.fillOval(px[i]-RADIUS,py[i]-RADIUS,2*RADIUS,2*RADIUS);
+        }
+        if(SimulationEvents.end(drawn)) {
+            drawn.drawn = count;
+            drawn.agents = px==null ? 0 : px.length;
+            drawn.commit();
+        }
+    }
+
+    /**
+     * Stop drawing frames
+     */
+    public void stop() {
+        timer.stop();
+    }
+}
@@ -0,0 +1,237 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class writes the whole state of a Simulation between
+ * two days to a binary file, and reads it back so the run
+ * can go on in another JVM. The file has a small header with
+ * the day, the counters and the seed, which is all the random
+ * state there is since every agent draws from its own stream,
+ * followed by the primitive columns of the Population and the
+ * arrays of the ContactGraph, so the graph isn't built again.
+ * The columns are copied in bulk through memory mapped
+ * regions of a FileChannel, a few at a time so that no
+ * region is larger than a mapped buffer can be.
+ * The config is not part of the file, the simulation is
+ * resumed with the config it is given.
+ */
+public class Checkpoint {
+    private static final int MAGIC = 0x4453434B;
+    private static final int VERSION = 2;
+    //bytes mapped at a time
+    private static final int REGION = 1<<28;
+
+    /**
+     * Write the state of a simulation to a file, replacing it
+     * @param simulation the simulation, between two days
+     * @param file the path of the checkpoint file
+     */
+    public static void write(Simulation simulation, String file) {
+        Population population = simulation.getPopulation();
+        ContactGraph contacts = simulation.getContacts();
+        Counters.Snapshot counters = simulation.getCounters().snapshot();
+        int n = population.size();
+        ByteBuffer header = ByteBuffer.allocate(48);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n)
+                .putInt(simulation.getDay())
+                .putInt(contacts.edgeCount())
+                .put((byte)(contacts.isHalf() ? 1 : 0));
+        for(int c=0;c<4;c++) {
+            header.putInt(counters.get(c));
+        }
+        header.putLong(simulation.getSeed());
+        header.flip();
+
+        Path path = Paths.get(file);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = channel.write(header);
+            position = writeFloats(channel,position,population.xs());
+            position = writeFloats(channel,position,population.ys());
+            position = writeBytes(channel,position,population.states());
+            position = writeInts(channel,position,population.timers());
+            position = writeInts(channel,position,contacts.getOffsets());
+            writeInts(channel,position,contacts.getTargets());
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Read a simulation back from a checkpoint file
+     * @param config the config to go on with
+     * @param file the path of the checkpoint file
+     * @return the simulation, at the day it was written on
+     */
+    public static Simulation read(Main config, String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(
+                    FileChannel.MapMode.READ_ONLY,0,
+                    Math.min(channel.size(),REGION));
+            if(header.getInt()!=MAGIC || header.getInt()!=VERSION) {
+                throw new IllegalArgumentException(file +
+                        " is not a checkpoint of this version");
+            }
+            int n = header.getInt();
+            int day = header.getInt();
+            int edges = header.getInt();
+            boolean half = header.get()==1;
+            int[] counts = new int[4];
+            for(int c=0;c<4;c++) {
+                counts[c] = header.getInt();
+            }
+            long seed = header.getLong();
+
+            long position = header.position();
+            float[] x = new float[n];
+            float[] y = new float[n];
+            byte[] state = new byte[n];
+            int[] timer = new int[n];
+            int[] offsets = new int[n+1];
+            int[] targets = new int[edges];
+            position = readFloats(channel,position,x);
+            position = readFloats(channel,position,y);
+            position = readBytes(channel,position,state);
+            position = readInts(channel,position,timer);
+            position = readInts(channel,position,offsets);
+            readInts(channel,position,targets);
+
+            return new Simulation(config,
+                    new Population(x,y,state,timer),
+                    new ContactGraph(offsets,targets,half),
+                    seed,
+                    new Counters.Snapshot(day,counts));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write a column of floats at a position of the file
+     * @param channel the open file
+     * @param position where to write
+     * @param values the column
+     * @return the position after the column
+     * @throws IOException
+     */
+    private static long writeFloats(FileChannel channel, long position,
+                                    float[] values) throws IOException {
+        int step = REGION/4;
+        for(int from=0;from<values.length;from+=step) {
+            int count = Math.min(step,values.length-from);
+            channel.map(FileChannel.MapMode.READ_WRITE,position,count*4L)
+                    .asFloatBuffer().put(values,from,count);
+            position += count*4L;
+        }
+        return position;
+    }
+
+    /**
+     * Write a column of ints at a position of the file
+     * @param channel the open file
+     * @param position where to write
+     * @param values the column
+     * @return the position after the column
+     * @throws IOException
+     */
+    private static long writeInts(FileChannel channel, long position,
+                                  int[] values) throws IOException {
+        int step = REGION/4;
+        for(int from=0;from<values.length;from+=step) {
+            int count = Math.min(step,values.length-from);
+            channel.map(FileChannel.MapMode.READ_WRITE,position,count*4L)
+                    .asIntBuffer().put(values,from,count);
+            position += count*4L;
+        }
+        return position;
+    }
+
+    /**
+     * Write a column of bytes at a position of the file
+     * @param channel the open file
+     * @param position where to write
+     * @param values the column
+     * @return the position after the column
+     * @throws IOException
+     */
+    private static long writeBytes(FileChannel channel, long position,
+                                   byte[] values) throws IOException {
+        for(int from=0;from<values.length;from+=REGION) {
+            int count = Math.min(REGION,values.length-from);
+            channel.map(FileChannel.MapMode.READ_WRITE,position,count)
+                    .put(values,from,count);
+            position += count;
+        }
+        return position;
+    }
+
+    /**
+     * Read a column of floats from a position of the file
+     * @param channel the open file
+     * @param position where to read
+     * @param values the column to fill
+     * @return the position after the column
+     * @throws IOException
+     */
+    private static long readFloats(FileChannel channel, long position,
+                                   float[] values) throws IOException {
+        int step = REGION/4;
+        for(int from=0;from<values.length;from+=step) {
+            int count = Math.min(step,values.length-from);
+            channel.map(FileChannel.MapMode.READ_ONLY,position,count*4L)
+                    .asFloatBuffer().get(values,from,count);
+            position += count*4L;
+        }
+        return position;
+    }
+
+    /**
+     * Read a column of ints from a position of the file
+     * @param channel the open file
+     * @param position where to read
+     * @param values the column to fill
+     * @return the position after the column
+     * @throws IOException
+     */
+    private static long readInts(FileChannel channel, long position,
+                                 int[] values) throws IOException {
+        int step = REGION/4;
+        for(int from=0;from<values.length;from+=step) {
+            int count = Math.min(step,values.length-from);
+            channel.map(FileChannel.MapMode.READ_ONLY,position,count*4L)
+                    .asIntBuffer().get(values,from,count);
+            position += count*4L;
+        }
+        return position;
+    }
+
+    /**
+     * Read a column of bytes from a position of the file
+     * @param channel the open file
+     * @param position where to read
+     * @param values the column to fill
+     * @return the position after the column
+     * @throws IOException
+     */
+    private static long readBytes(FileChannel channel, long position,
+                                  byte[] values) throws IOException {
+        for(int from=0;from<values.length;from+=REGION) {
+            int count = Math.min(REGION,values.length-from);
+            channel.map(FileChannel.MapMode.READ_ONLY,position,count)
+                    .get(values,from,count);
+            position += count;
+        }
+        return position;
+    }
+}
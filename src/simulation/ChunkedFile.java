@@ -0,0 +1,50 @@
+package simulation;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class holds what the readers of binary files share:
+ * a file is split in chunks of CHUNK records, each memory
+ * mapped and parsed by one task, and the tasks run in
+ * parallel on a fixed pool of threads.
+ */
+final class ChunkedFile {
+    //records parsed per task, small enough to map in one region
+    static final int CHUNK = 1<<20;
+
+    private ChunkedFile() {
+    }
+
+    /**
+     * Run tasks on a fixed pool of threads and wait for all of them.
+     * An interrupt is kept and fails the read, the exception of a
+     * failed task is thrown as it is.
+     * @param file the file, for error messages
+     * @param tasks the tasks
+     * @param threads the number of threads
+     */
+    static void run(String file, List<Callable<Void>> tasks, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1,Math.min(threads,tasks.size())));
+        try {
+            for(Future<Void> result:pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("reading " + file + " was interrupted");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package simulation;
+
+import java.io.PrintStream;
+
+/**
+ * This class prints the counters of each simulated
+ * day as comma separated values, used for headless runs
+ */
+public class ConsoleReporter implements SimulationListener {
+    private final PrintStream out;
+    private final Counters counters;
+
+    /**
+     * Constructor for the reporter, prints the header line
+     * @param out the stream to print to
+     * @param counters the counters of the simulation
+     */
+    public ConsoleReporter(PrintStream out, Counters counters) {
+        this.out = out;
+        this.counters = counters;
+        out.println("day,sick,dead,vulnerable,immune");
+    }
+
+    @Override
+    public void transition(int agentID, int day, int from, int to) {
+    }
+
+    @Override
+    public void dayEnded(int day) {
+        Counters.Snapshot now = counters.snapshot();
+        out.println(day + "," + now.getSick() + "," + now.getDead() + "," +
+                now.getVulnerable() + "," + now.getImmune());
+    }
+}
@@ -0,0 +1,137 @@
+package simulation;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * This class reads a contact network from a binary edge list
+ * file into a ContactGraph, instead of finding neighbors by
+ * distance. Each record is one contact, the two agent indexes
+ * as big endian ints, and each contact is listed once.
+ * Like ContactGraph.build the file is read twice, once to
+ * count the degrees and once to fill the targets, in memory
+ * mapped chunks parsed in parallel that add to the shared
+ * arrays atomically. So besides the graph itself only one
+ * int per agent is used, however many edges there are.
+ * The neighbors of each agent are sorted at the end, so the
+ * graph doesn't depend on the order the chunks ran in.
+ */
+public class ContactFile {
+    private static final VarHandle INTS =
+            MethodHandles.arrayElementVarHandle(int[].class);
+
+    /**
+     * Read the contact graph of n agents from a file
+     * @param file the path of the edge list file
+     * @param n the number of agents
+     * @param half whether to store each edge only once,
+     *             under the lower agent index
+     * @param threads the number of chunks parsed at a time
+     * @return the contact graph
+     */
+    public static ContactGraph read(String file, int n, boolean half,
+                                    int threads) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size%8!=0) {
+                throw new IllegalArgumentException(file +
+                        " is not a file of 8 byte edge records");
+            }
+            long edges = size/8;
+
+            //count the degrees
+            int[] offsets = new int[n+1];
+            ChunkedFile.run(file,chunks(edges,(i,j) -> {
+                INTS.getAndAdd(offsets,i+1,1);
+                if(!half) {
+                    INTS.getAndAdd(offsets,j+1,1);
+                }
+            },channel,n),threads);
+            long total = 0;
+            for(int i=0;i<n;i++) {
+                total += offsets[i+1];
+                if(total>Integer.MAX_VALUE-8) {
+                    throw new IllegalArgumentException(file +
+                            " has too many edges for one graph");
+                }
+                offsets[i+1] = (int)total;
+            }
+
+            //fill the targets, next is where the next
+            //neighbor of each agent goes
+            int[] targets = new int[offsets[n]];
+            int[] next = Arrays.copyOf(offsets,n);
+            ChunkedFile.run(file,chunks(edges,(i,j) -> {
+                targets[(int)INTS.getAndAdd(next,i,1)] = j;
+                if(!half) {
+                    targets[(int)INTS.getAndAdd(next,j,1)] = i;
+                }
+            },channel,n),threads);
+
+            //sort the neighbors of each agent
+            List<Callable<Void>> tasks = new ArrayList<>();
+            int step = Math.max(1,n/Math.max(1,threads*4));
+            for(int from=0;from<n;from+=step) {
+                int start = from;
+                int end = Math.min(n,from+step);
+                tasks.add(() -> {
+                    for(int i=start;i<end;i++) {
+                        Arrays.sort(targets,offsets[i],offsets[i+1]);
+                    }
+                    return null;
+                });
+            }
+            ChunkedFile.run(file,tasks,threads);
+            return new ContactGraph(offsets,targets,half);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Make one task per chunk of the file that gives each
+     * edge of the chunk to an action, lower index first
+     * @param edges the number of edges in the file
+     * @param action what to do with each edge
+     * @param channel the open file
+     * @param n the number of agents
+     * @return the tasks
+     */
+    private static List<Callable<Void>> chunks(long edges,
+                                    SpatialIndex.PairVisitor action,
+                                    FileChannel channel, int n) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(long from=0;from<edges;from+=ChunkedFile.CHUNK) {
+            long start = from;
+            int count = (int)Math.min(ChunkedFile.CHUNK,edges-from);
+            tasks.add(() -> {
+                MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY,start*8,count*8L);
+                for(int k=0;k<count;k++) {
+                    int i = buffer.getInt();
+                    int j = buffer.getInt();
+                    if(i<0 || j<0 || i>=n || j>=n) {
+                        throw new IllegalArgumentException("edge " +
+                                (start+k) + " is not between two of the " +
+                                n + " agents: " + i + " " + j);
+                    }
+                    if(i!=j) {
+                        action.visit(Math.min(i,j),Math.max(i,j));
+                    }
+                }
+                return null;
+            });
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,109 @@
+package simulation;
+
+/**
+ * This class is the contact graph between the agents in
+ * compressed sparse row form. The neighbors of agent i are
+ * targets[offsets[i]] to targets[offsets[i+1]-1], so the whole
+ * graph is two int arrays instead of one list per agent.
+ * A half graph stores each symmetric edge only once, under
+ * the lower agent index, which halves the targets array but
+ * means the neighbors of an agent can't be listed directly,
+ * only all edges can be walked.
+ */
+public class ContactGraph {
+    private final int n;
+    private final int[] offsets;
+    private final int[] targets;
+    private final boolean half;
+
+    /**
+     * Constructor for a graph from its arrays
+     * @param offsets n+1 start positions into targets
+     * @param targets the neighbor indexes
+     * @param half whether each edge is only stored once
+     */
+    public ContactGraph(int[] offsets, int[] targets, boolean half) {
+        this.n = offsets.length-1;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.half = half;
+    }
+
+    /**
+     * Build the graph of agents closer than distance, using
+     * a SpatialIndex so only agents in adjacent cells are compared.
+     * The pairs are visited twice, once to count the degrees
+     * and once to fill the targets, so no temporary lists are made.
+     * @param index the spatial index over the agents
+     * @param n the number of agents
+     * @param distance the exposure distance
+     * @param inclusive whether agents exactly distance apart
+     *                  are neighbors
+     * @param half whether to store each edge only once
+     * @return the contact graph
+     */
+    public static ContactGraph build(SpatialIndex index, int n,
+                                     double distance, boolean inclusive,
+                                     boolean half) {
+        int[] offsets = new int[n+1];
+        index.forEachPair(distance,inclusive,(i,j) -> {
+            offsets[i+1]++;
+            if(!half) {
+                offsets[j+1]++;
+            }
+        });
+        for(int i=0;i<n;i++) {
+            offsets[i+1] += offsets[i];
+        }
+        int[] targets = new int[offsets[n]];
+        int[] next = new int[n];
+        System.arraycopy(offsets,0,next,0,n);
+        index.forEachPair(distance,inclusive,(i,j) -> {
+            targets[next[i]++] = j;
+            if(!half) {
+                targets[next[j]++] = i;
+            }
+        });
+        return new ContactGraph(offsets,targets,half);
+    }
+
+    /**
+     * Return the number of agents
+     * @return n
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Return whether each edge is only stored once
+     * @return half
+     */
+    public boolean isHalf() {
+        return half;
+    }
+
+    /**
+     * Return the number of stored edges
+     * @return the length of the targets array
+     */
+    public int edgeCount() {
+        return offsets[n];
+    }
+
+    /**
+     * Return the offsets array, for tight loops over the graph
+     * @return offsets
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Return the targets array, for tight loops over the graph
+     * @return targets
+     */
+    public int[] getTargets() {
+        return targets;
+    }
+}
@@ -0,0 +1,86 @@
+package simulation;
+
+/**
+ * This class records the counters of every simulated
+ * day in primitive arrays, one column per compartment.
+ * Day firstDay+d is row d, firstDay is only not 0 for a
+ * resumed simulation. The arrays grow by doubling.
+ */
+public class CounterHistory {
+    public static final int SICK = Counters.SICK;
+    public static final int DEAD = Counters.DEAD;
+    public static final int VULNERABLE = Counters.VULNERABLE;
+    public static final int IMMUNE = Counters.IMMUNE;
+
+    private int[][] values = new int[4][64];
+    private int size = 0;
+    private int firstDay = 0;
+
+    /**
+     * Record the counters of the next day
+     * @param sick the sick counter
+     * @param dead the dead counter
+     * @param vulnerable the vulnerable counter
+     * @param immune the immune counter
+     */
+    public void add(int sick, int dead, int vulnerable, int immune) {
+        if(size==values[0].length) {
+            for(int s=0;s<values.length;s++) {
+                int[] grown = new int[size*2];
+                System.arraycopy(values[s],0,grown,0,size);
+                values[s] = grown;
+            }
+        }
+        values[SICK][size] = sick;
+        values[DEAD][size] = dead;
+        values[VULNERABLE][size] = vulnerable;
+        values[IMMUNE][size] = immune;
+        size++;
+    }
+
+    /**
+     * Record the counters of the next day
+     * @param snapshot the counters, read together
+     */
+    public void add(Counters.Snapshot snapshot) {
+        if(size==0) {
+            firstDay = snapshot.getDay();
+        }
+        add(snapshot.getSick(),snapshot.getDead(),
+            snapshot.getVulnerable(),snapshot.getImmune());
+    }
+
+    /**
+     * Return the number of recorded days
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the day of the first row
+     * @return firstDay
+     */
+    public int getFirstDay() {
+        return firstDay;
+    }
+
+    /**
+     * Return a recorded counter
+     * @param series SICK, DEAD, VULNERABLE or IMMUNE
+     * @param day the row
+     * @return the counter on that row's day
+     */
+    public int get(int series, int day) {
+        return values[series][day];
+    }
+
+    /**
+     * Forget all recorded days, keeping the arrays
+     */
+    public void clear() {
+        size = 0;
+        firstDay = 0;
+    }
+}
@@ -1,138 +1,213 @@
 package simulation;
 
 /**
- * This class handles the synchronized counters
- * for the simulation variables
- * Handles days, sick agents, dead agents,
- * immune agents and vulnerable agents
+ * This class handles the counters of one simulation:
+ * the day, and the number of sick, dead, vulnerable
+ * and immune agents.
+ * An agent changing compartment is a single move that
+ * takes one from a counter and adds one to another.
+ * Moves go to one of several stripes picked by the
+ * calling thread, so agent threads rarely wait on each
+ * other, and each stripe applies a move under its own
+ * lock. A snapshot holds the locks of all stripes, taken
+ * in index order, while it sums them, so it sees no move
+ * half done across two stripes and always adds up to the
+ * number of agents.
  */
 public class Counters {
-    private static int sickCounter = 0;
-    private static int deadCounter = 0;
-    private static int vulnerableCounter = 0;
-    private static int immuneCounter = 0;
-
-    private static int days = 0;
-
-    /**
-     * increment sick counter
-     */
-    public static synchronized void incrementSick () {
-        sickCounter++;
-    }
-
-    /**
-     * Decrement sick counter
-     */
-    public static synchronized void decrementSick () {
-        sickCounter--;
-    }
+    public static final int SICK = 0;
+    public static final int DEAD = 1;
+    public static final int VULNERABLE = 2;
+    public static final int IMMUNE = 3;
+
+    //counts of a stripe are padded to 64 bytes so two
+    //stripes don't share a cache line
+    private static final int PADDED = 16;
+
+    private final int[][] stripes;
+    private final int mask;
+    private volatile int days = 0;
+
+    /**
+     * The counters of one moment, all read together
+     */
+    public static class Snapshot {
+        private final int day;
+        private final int[] counts;
+
+        /**
+         * Constructor for a snapshot
+         * @param day the day
+         * @param counts the counters, indexed by compartment
+         */
+        public Snapshot(int day, int[] counts) {
+            this.day = day;
+            this.counts = counts;
+        }
+
+        /**
+         * Return the day of the snapshot
+         * @return day
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * Return a counter
+         * @param compartment SICK, DEAD, VULNERABLE or IMMUNE
+         * @return the number of agents in the compartment
+         */
+        public int get(int compartment) {
+            return counts[compartment];
+        }
+
+        /**
+         * Return the sick counter
+         * @return sick agents
+         */
+        public int getSick() {
+            return counts[SICK];
+        }
+
+        /**
+         * Return the dead counter
+         * @return dead agents
+         */
+        public int getDead() {
+            return counts[DEAD];
+        }
+
+        /**
+         * Return the vulnerable counter
+         * @return vulnerable agents
+         */
+        public int getVulnerable() {
+            return counts[VULNERABLE];
+        }
+
+        /**
+         * Return the immune counter
+         * @return immune agents
+         */
+        public int getImmune() {
+            return counts[IMMUNE];
+        }
+    }
+
+    /**
+     * Constructor for counters shared by all available processors
+     */
+    public Counters() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for the counters
+     * @param threads about how many threads move agents at
+     *                the same time, 1 for a single thread
+     */
+    public Counters(int threads) {
+        int count = Integer.highestOneBit(Math.max(1,threads));
+        if(count<threads) {
+            count *= 2;
+        }
+        stripes = new int[count][PADDED];
+        mask = count-1;
+    }
+
+    /**
+     * Start over on day 0 with every agent vulnerable.
+     * Call when no agent is moving.
+     * @param vulnerable the number of agents
+     */
+    public void reset(int vulnerable) {
+        for(int[] stripe:stripes) {
+            synchronized (stripe) {
+                for(int c=0;c<PADDED;c++) {
+                    stripe[c] = 0;
+                }
+            }
+        }
+        synchronized (stripes[0]) {
+            stripes[0][VULNERABLE] = vulnerable;
+        }
+        days = 0;
+    }
+
+    /**
+     * Continue from saved counters, for a resumed simulation.
+     * Call when no agent is moving.
+     * @param saved the counters to continue from
+     */
+    public void restore(Snapshot saved) {
+        reset(0);
+        synchronized (stripes[0]) {
+            for(int c=0;c<saved.counts.length;c++) {
+                stripes[0][c] = saved.counts[c];
+            }
+        }
+        days = saved.day;
+    }
 
     /**
-     * Increment dead counter
+     * Move one agent from a compartment to another
+     * @param from the compartment the agent leaves
+     * @param to the compartment the agent enters
      */
-    public static synchronized void incrementDead () {
-        deadCounter++;
+    public void move(int from, int to) {
+        int[] stripe = stripes[(int)Thread.currentThread().getId() & mask];
+        synchronized (stripe) {
+            stripe[from]--;
+            stripe[to]++;
+        }
     }
 
     /**
-     * Decrement vulnerable counter
+     * Increment days counter, from the one thread
+     * that advances the day
      */
-    public static synchronized void decrementVulnerable () {
-        vulnerableCounter--;
-    }
-
-    /**
-     * Increment immune counter
-     */
-    public static synchronized void incrementImmune () {
-        immuneCounter++;
-    }
-
-    /**
-     * Increment days counter
-     */
-    public static synchronized void incrementDays () {
+    public void incrementDays() {
         days++;
     }
 
-    /**
-     * Return the sick counter
-     * @return sickCounter
-     */
-    public static int getSickCounter() {
-        return sickCounter;
-    }
-
-    /**
-     * Return the dead counter
-     * @return deadCounter
-     */
-    public static int getDeadCounter() {
-        return deadCounter;
-    }
-
-    /**
-     * Return the vulnerable counter
-     * @return vulnerableCounter
-     */
-    public static int getVulnerableCounter() {
-        return vulnerableCounter;
-    }
-
-    /**
-     * Return the immune counter
-     * @return immuneCounter
-     */
-    public static int getImmuneCounter() {
-        return immuneCounter;
-    }
-
     /**
      * Return the days counter
      * @return days
      */
-    public static int getDays() {
+    public int getDays() {
         return days;
     }
 
     /**
-     * Set the vulnerable counter
-     * @param n the value to set
-     */
-    public static synchronized void setVulnerableCounter(int n) {
-        vulnerableCounter=n;
-    }
-
-    /**
-     * Set the dead counter
-     * @param n the value to set
-     */
-    public static synchronized void setDeadCounter(int n) {
-        deadCounter=n;
-    }
-
-    /**
-     * Set the immune counter
-     * @param n the value to set
-     */
-    public static synchronized void setImmuneCounter(int n) {
-        immuneCounter=n;
-    }
-
-    /**
-     * Set the sick counter
-     * @param n the value to set
+     * Read all counters together
+     * @return the day and the sum of all stripes
      */
-    public static synchronized void setSickCounter(int n) {
-        sickCounter=n;
+    public Snapshot snapshot() {
+        int[] counts = new int[4];
+        int day = days;
+        sum(0,counts);
+        return new Snapshot(day,counts);
     }
 
     /**
-     * Set the days counter
-     * @param n the value to set
+     * Lock a stripe and the ones after it, then sum all stripes.
+     * A move holds only one lock, so locking in index order
+     * can't deadlock.
+     * @param stripe the next stripe to lock
+     * @param counts the sums
      */
-    public static synchronized void setDays(int n) {
-        days=n;
+    private void sum(int stripe, int[] counts) {
+        if(stripe==stripes.length) {
+            for(int[] locked:stripes) {
+                for(int c=0;c<counts.length;c++) {
+                    counts[c] += locked[c];
+                }
+            }
+            return;
+        }
+        synchronized (stripes[stripe]) {
+            sum(stripe+1,counts);
+        }
     }
 }
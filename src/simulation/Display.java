@@ -11,26 +11,22 @@ import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
-import javafx.scene.control.TextArea;
-import javafx.scene.layout.ColumnConstraints;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
-import javafx.scene.layout.RowConstraints;
-import javafx.scene.shape.Circle;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * This class is the GUI class for the JavaFX Application.
  * It handles all of the GUI setup and updates.
  */
-public class Display extends Application{
+public class Display extends Application implements SimulationListener {
     private Main main = new Main();
     private int width = 200;
     private int height = 200;
@@ -47,27 +43,55 @@ public class Display extends Application{
     private int rows = 0;
     private int columns = 0;
 
-    private TextArea events;
-    private XYChart.Series sickLine = new XYChart.Series();
-    private XYChart.Series deadLine = new XYChart.Series();
-    private XYChart.Series vulnerableLine = new XYChart.Series();
-    private XYChart.Series immuneLine = new XYChart.Series();
+    private EventLog eventLog;
+    //streams days and transitions to files, null if not configured
+    private OutputWriter output;
+    private EventListView events;
+    private XYChart.Series<Number,Number> sickLine =
+            new XYChart.Series<>();
+    private XYChart.Series<Number,Number> deadLine =
+            new XYChart.Series<>();
+    private XYChart.Series<Number,Number> vulnerableLine =
+            new XYChart.Series<>();
+    private XYChart.Series<Number,Number> immuneLine =
+            new XYChart.Series<>();
     private final NumberAxis xAxis = new NumberAxis();
     private final NumberAxis yAxis = new NumberAxis();
     private final LineChart<Number,Number> lineChart =
             new LineChart<Number,Number>(xAxis,yAxis);
-
-    private GridPane gridPane = new GridPane();
-    private Pane pane = new Pane();
+    //every day is recorded, at most CHART_POINTS per line are plotted
+    private static final int CHART_POINTS = 200;
+    //days a second at most, about one per frame
+    private static final double MAX_RATE = 60;
+    private final CounterHistory history = new CounterHistory();
+    private List<XYChart.Series<Number,Number>> lines;
+    private Downsampler[] samplers;
+    private int[] shownPicks;
+
+    //agents are drawn on one canvas, at most 30 frames a second
+    private final CanvasRenderer renderer = new CanvasRenderer(780,720,30);
+    private final Pane pane = new Pane();
     private Button restart;
     private List<Agent> agents = new ArrayList<>();
-
+    private AgentExecutor executor;
+    private Simulation simulation;
+    //the agents' counters, or the engine's with the virtual engine
+    private Counters counters = new Counters();
+    //seed of the current run, a restart moves on to the next run
+    private long seed;
+    private int restarts = 0;
+    //placement and initial agents of the current run
+    private SplittableRandom placement;
+    //initial states of the population file, null if not given
+    private byte[] fileStates;
+    //the run as an MBean, for pausing and speed over JMX
+    private SimulationMonitor monitor;
 
     @Override
     public void start(Stage stage) throws FileNotFoundException {
         //Send command line arguments to main and get all
         //the config variables
-        main.start(this,getParameters().getRaw().toArray(new String[0]));
+        main.start(getParameters().getRaw().toArray(new String[0]));
         width = main.getWidth();
         height = main.getHeight();
         exposureDistance = main.getExposureDistance();
@@ -75,6 +99,8 @@ public class Display extends Application{
         sickness = main.getSickness();
         recover = main.getRecover();
         random = main.isRandom();
+        seed = main.getSeed();
+        placement = new SplittableRandom(seed);
         n = main.getN();
         grid = main.isGrid();
         randomGrid = main.isRandomGrid();
@@ -82,16 +108,33 @@ public class Display extends Application{
         initialImmune = main.getInitialImmune();
         rows = main.getRows();
         columns = main.getColumns();
+        executor = new AgentExecutor(main.getExecution(),main.getWorkers());
+
+        counters.reset(n);
+
+        //one day a second unless the config says otherwise
+        monitor = new SimulationMonitor("display",renderer::getBacklog,
+                            main.getSpeed()>0 ? main.getSpeed() : 1);
+        monitor.watch(counters);
+        if(main.isJmx()) {
+            monitor.register();
+        }
 
-        Counters.setVulnerableCounter(n);
+        //Agent canvas
+        pane.getChildren().add(renderer.getCanvas());
 
-        //Event text field
-        events = new TextArea();
-        events.setTranslateX(850);
-        events.setTranslateY(10);
-        events.setEditable(false);
-        events.setMaxSize(400,200);
-        pane.getChildren().add(events);
+        //Event list, only the visible rows are formatted
+        eventLog = new EventLog(main.getEventLogSize(),main.getEventSpill());
+        events = new EventListView(eventLog);
+        events.getView().setTranslateX(850);
+        events.getView().setTranslateY(10);
+        events.getView().setMaxSize(400,200);
+        pane.getChildren().add(events.getView());
+
+        //output files, a restart keeps writing to the same files
+        if(main.getOutput()!=null) {
+            output = new OutputWriter(main.getOutput(),main.isBinaryOutput());
+        }
 
         //plot
         lineChart.setTitle("Simulation");
@@ -102,8 +145,15 @@ public class Display extends Application{
         lineChart.setMaxSize(450,450);
         lineChart.getXAxis().setLabel("Days");
         lineChart.getYAxis().setLabel("Agents");
-        lineChart.getData().addAll(sickLine, deadLine, vulnerableLine,
-                                    immuneLine);
+        //indexed like the CounterHistory series
+        lines = Arrays.asList(sickLine, deadLine, vulnerableLine, immuneLine);
+        lineChart.getData().addAll(lines);
+        samplers = new Downsampler[lines.size()];
+        shownPicks = new int[lines.size()];
+        for(int s=0;s<lines.size();s++) {
+            samplers[s] = new Downsampler(history,s,CHART_POINTS);
+        }
+        lineChart.setCreateSymbols(false);
         lineChart.setTranslateX(800);
         lineChart.setTranslateY(200);
         pane.getChildren().add(lineChart);
@@ -112,7 +162,7 @@ public class Display extends Application{
         restart = new Button("Restart");
         restart.setOnAction(new EventHandler<ActionEvent>() {
             @Override public void handle(ActionEvent e) {
-                restartSimulation(stage);
+                restartSimulation();
             }
         });
         restart.setTranslateX(900);
@@ -125,7 +175,13 @@ public class Display extends Application{
         stage.show();
 
         //Depending on config, run the correct startup method
-        if(random) {
+        if(main.isVirtualEngine()) {
+            initializeVirtual();
+        }
+        else if(main.getPopulationFile()!=null) {
+            initializeFile();
+        }
+        else if(random) {
             initializeRandom();
         }
         else if(grid) {
@@ -136,12 +192,35 @@ public class Display extends Application{
         }
 
         //Start a 1second loop to update the plots
-        //with new data points and increment the days
+        //with new data points and increment the days.
+        //With the virtual engine, stepping the simulation
+        //updates the plots through dayEnded
+        //The monitor can pause the loop and change the rate of
+        //the engine, speed 0 runs it as often as frames are drawn.
+        //Agent threads sleep in real seconds, so their days stay
+        //a second long and the monitor can't pause them.
         Timeline timeline = new Timeline();
         timeline.getKeyFrames().add(
                 new KeyFrame(Duration.millis(1000), event ->  {
-                    updateCounters();
-                    Counters.incrementDays();
+                    if(monitor.isPaused()) {
+                        return;
+                    }
+                    double speed = monitor.getTargetSpeed();
+                    double rate = simulation==null ? 1
+                            : speed>0 ? Math.min(speed,MAX_RATE) : MAX_RATE;
+                    if(timeline.getRate()!=rate) {
+                        timeline.setRate(rate);
+                    }
+                    if(simulation!=null) {
+                        monitor.step();
+                    }
+                    else {
+                        long start = System.nanoTime();
+                        updateCounters();
+                        counters.incrementDays();
+                        monitor.stepped(System.nanoTime()-start,
+                                        agents.size());
+                    }
                 })
         );
         timeline.setCycleCount(Animation.INDEFINITE);
@@ -149,62 +228,58 @@ public class Display extends Application{
     }
 
     /**
-     * This method restarts the simulation with
-     * new random positions for the agents.
-     * @param stage the JavaFX stage
+     * This method restarts the simulation on the same agents
+     * and neighbors with the next seed. The old run is stopped
+     * first and waited for, so none of its agents can change
+     * anything anymore. The agents, the contact graph, the
+     * counters and the window are reset in place and reused.
      */
-    public void restartSimulation(Stage stage) {
-        //stop the current agent threads
+    public void restartSimulation() {
+        //stop the current agents and wait for their threads
         for(Agent agent:agents) {
             agent.stop();
         }
+        executor.shutdown();
+        executor = new AgentExecutor(main.getExecution(),main.getWorkers());
+
+        //the next run has its own seed
+        restarts++;
+        seed = RandomStreams.run(main.getSeed(),restarts);
+        placement = new SplittableRandom(seed);
 
         //reset counters
-        Counters.setDeadCounter(0);
-        Counters.setSickCounter(0);
-        Counters.setImmuneCounter(0);
-        Counters.setVulnerableCounter(n);
-        Counters.setDays(0);
-
-        //reset text field
-        events = new TextArea();
-        events.setTranslateX(850);
-        events.setTranslateY(10);
-        events.setEditable(false);
-        events.setMaxSize(400,200);
+        counters.reset(agents.isEmpty() ? n : agents.size());
 
-        //reset plot
-        sickLine.getData().clear();
-        deadLine.getData().clear();
-        vulnerableLine.getData().clear();
-        immuneLine.getData().clear();
-
-        //reset pane
-        pane = new Pane();
-        gridPane = new GridPane();
-        pane.getChildren().add(lineChart);
-        pane.getChildren().add(events);
-        pane.getChildren().add(restart);
-        stage.setTitle("Simulation");
-        Scene scene = new Scene(pane, 1280, 720);
-        stage.setScene(scene);
-        stage.show();
+        //reset event list
+        eventLog.clear();
 
-        //reset agents
-        agents = new ArrayList<>();
+        //reset plot
+        history.clear();
+        for(int s=0;s<lines.size();s++) {
+            lines.get(s).getData().clear();
+            samplers[s].clear();
+            shownPicks[s] = 0;
+        }
 
-        //choose correct startup method based on config
-        if(random == true) {
-            initializeRandom();
+        //a restart of a resumed run goes back to the checkpoint
+        if(simulation!=null && main.getResume()!=null) {
+            initializeVirtual();
+            return;
         }
-        else if(grid==true) {
-            initializeGrid();
+        if(simulation!=null) {
+            simulation.reset(seed);
+            simulation.seed();
+            monitor.watch(simulation);
         }
-        else if(randomGrid==true) {
-            initializeRandomGrid();
+        else {
+            for(Agent agent:agents) {
+                agent.reset(seed);
+                executor.start(agent);
+            }
+            seedAgents();
+            monitor.watch(counters);
         }
-
-
+        renderer.redrawAll();
     }
 
     /**
@@ -212,44 +287,31 @@ public class Display extends Application{
      * random configuration is chosen in the
      * text file, and also the default configuration
      * if not specified in the text file.
-     * Creates the agents on a new Thread and
+     * Creates the agents, starts them on the AgentExecutor and
      * initializes their positions and neighbors.
      */
     public void initializeRandom() {
+        SimulationEvents.Placement placed = SimulationEvents.recording()
+                ? new SimulationEvents.Placement() : null;
+        SimulationEvents.begin(placed);
         //Loop to create n agents
         for(int i = 0;i<n;i++) {
             //generate random position within dimensions
-            Random random = new Random();
             int upperBoundX = width-5;
             int upperBoundY = height-5;
-            int x = random.nextInt(upperBoundX)+5;
-            int y = random.nextInt(upperBoundY)+5;
+            int x = placement.nextInt(upperBoundX)+5;
+            int y = placement.nextInt(upperBoundY)+5;
             Agent agent = new Agent(x,y,this,i);
-            //start a new thread
-            Thread agentThread = new Thread(agent);
-            agentThread.start();
-            //get the agent's circle and add it to the pane
-            Circle circle = agent.getCircle();
-            pane.getChildren().add(circle);
+            //start the agent in the configured execution mode
+            executor.start(agent);
             //add the agent to our agent list
             agents.add(agent);
         }
 
+        commitPlacement(placed);
         //figure out each agent's neighbor based on
         //distance and exposuredistance
-        for (Agent agent:agents) {
-            for (Agent agent1:agents) {
-
-                double xDistance = agent1.getXPosition()-agent.getXPosition();
-                double yDistance = agent1.getYPosition()-agent.getYPosition();
-                double distance = Math.sqrt((yDistance*yDistance)+
-                                            (xDistance*xDistance));
-                if (distance<(double)exposureDistance && !agent.equals(agent1)) {
-                    agent.addNeighbor(agent1);
-                }
-            }
-
-        }
+        connectNeighbors(false);
         //set initialImmune immune agents
         //Not randomized since agents are already randomly positioned
         int counter = 0;
@@ -270,101 +332,144 @@ public class Display extends Application{
         }
     }
 
+    /**
+     * This method is the startup method for when the "population"
+     * option is specified in the config text file.
+     * Creates one agent at each float position of the
+     * PopulationFile, with its initial state if the file has
+     * them, otherwise the initial sick and immune agents are
+     * picked at random.
+     */
+    public void initializeFile() {
+        SimulationEvents.Placement placed = SimulationEvents.recording()
+                ? new SimulationEvents.Placement() : null;
+        SimulationEvents.begin(placed);
+        Population file = PopulationFile.read(main.getPopulationFile(),
+                            main.isPopulationStates(),main.getWorkers());
+        n = file.size();
+        counters.reset(n);
+        for(int i=0;i<n;i++) {
+            Agent agent = new Agent(file.getX(i),file.getY(i),this,i);
+            //start the agent in the configured execution mode
+            executor.start(agent);
+            agents.add(agent);
+        }
+        commitPlacement(placed);
+        connectNeighbors(false);
+        fileStates = file.initialStates();
+        seedAgents();
+    }
+
+    /**
+     * This method sets the initial sick and immune agents,
+     * from the states of the population file if it has them,
+     * which can also make agents exposed or dead.
+     * Otherwise initialSick and initialImmune agents are
+     * picked at random, also after a restart where the agents
+     * keep their positions.
+     */
+    private void seedAgents() {
+        int size = agents.size();
+        if(fileStates!=null) {
+            for(int i=0;i<size;i++) {
+                switch (fileStates[i]) {
+                    case AgentState.EXPOSED:
+                        agents.get(i).setExposed();
+                        break;
+                    case AgentState.IMMUNE:
+                        agents.get(i).setImmune();
+                        break;
+                    case AgentState.DEAD:
+                        agents.get(i).setDead();
+                        break;
+                }
+            }
+            //the sick agents last, so the neighbors they expose
+            //already have their own states from the file
+            for(int i=0;i<size;i++) {
+                if(fileStates[i]==AgentState.SICK) {
+                    agents.get(i).initialSick();
+                }
+            }
+            return;
+        }
+        //pick initialSick + initialImmune distinct agents
+        HashSet<Integer> picked = new HashSet<>();
+        int sick = Math.min(initialSick,size);
+        int immune = Math.min(initialImmune,size-sick);
+        int[] chosen = new int[sick+immune];
+        for(int i=0;i<sick+immune;i++) {
+            int index = placement.nextInt(size);
+            while(!picked.add(index)) {
+                index = placement.nextInt(size);
+            }
+            chosen[i] = index;
+        }
+        //immune first, a sick agent can expose its
+        //neighbors as soon as it is woken
+        for(int i=sick;i<sick+immune;i++) {
+            agents.get(chosen[i]).setImmune();
+        }
+        for(int i=0;i<sick;i++) {
+            agents.get(chosen[i]).initialSick();
+        }
+    }
+
     /**
      * This method is the startup method for when the "grid"
      * option is specified in the config text file.
-     * Creates a gridpane of r rows and c columns and
+     * Creates a grid of r rows and c columns and
      * places 1 agent in each cell. Distance between adjacent
      * cells is equal to exposuredistance as specified in
      * the project description.
      */
     public void initializeGrid() {
-        //set row and column sizes
-        for(int i=0;i<rows;i++) {
-            RowConstraints rowConstraints = new RowConstraints();
-            rowConstraints.setMinHeight(exposureDistance);
-            gridPane.getRowConstraints().add(rowConstraints);
-        }
-        for(int i=0;i<rows;i++) {
-            ColumnConstraints columnConstraints = new ColumnConstraints();
-            columnConstraints.setMinWidth(exposureDistance);
-            gridPane.getColumnConstraints().add(columnConstraints);
-        }
-        //set gridpane size and position
-        gridPane.setMinSize(700,700);
-        gridPane.setTranslateX(0);
-        gridPane.setTranslateY(0);
+        SimulationEvents.Placement placed = SimulationEvents.recording()
+                ? new SimulationEvents.Placement() : null;
+        SimulationEvents.begin(placed);
         //create rows*columns agents
-        Counters.setVulnerableCounter(rows*columns);
+        counters.reset(rows*columns);
         for(int i = 0;i<rows;i++) {
             for(int j=0;j<columns;j++) {
                 int x = i*exposureDistance + exposureDistance/2;
                 int y = j*exposureDistance + exposureDistance/2;
                 Agent agent = new Agent(x, y, this, i*columns+j);
-                //start a new thread for each agent
-                Thread agentThread = new Thread(agent);
-                agentThread.start();
-                //get agent's circle and add it to the gridpane
-                Circle circle = agent.getCircle();
-                gridPane.add(circle,i,j);
+                //start each agent in the configured execution mode
+                executor.start(agent);
                 //add the agent to our list of agents
                 agents.add(agent);
             }
         }
-        //add the gridpane to the pane
-        pane.getChildren().add(gridPane);
         //generate initialSick + initialImmune random indeces
         List<Integer> initialAgents = new ArrayList<>();
         for (int i=0;i<initialSick;i++) {
-            int x = (int)(Math.random()*n);
+            int x = placement.nextInt(n);
             while(initialAgents.contains(x)) {
-                x = (int)(Math.random()*n);
+                x = placement.nextInt(n);
             }
             initialAgents.add(x);
         }
         for (int i=0;i<initialImmune;i++) {
-            int x = (int)(Math.random()*n);
+            int x = placement.nextInt(n);
             while(initialAgents.contains(x)) {
-                x = (int)(Math.random()*n);
+                x = placement.nextInt(n);
             }
             initialAgents.add(x);
         }
+        commitPlacement(placed);
         //calculate neighbors for each agent
-        for (Agent agent:agents) {
-            for (Agent agent1:agents) {
-
-                double xDistance = agent1.getXPosition()-agent.getXPosition();
-                double yDistance = agent1.getYPosition()-agent.getYPosition();
-                double distance = Math.sqrt((yDistance*yDistance)+
-                                            (xDistance*xDistance));
-                if (distance<=exposureDistance && !agent.equals(agent1)) {
-                    agent.addNeighbor(agent1);
-                }
-            }
-
+        connectNeighbors(true);
+        //Set initialImmune immune agents at the start of
+        //the simulation, before any sick agent is woken
+        //and exposes its neighbors
+        for (int counter = 0;counter<initialImmune;counter++) {
+            agents.get(initialAgents.get(initialSick+counter)).setImmune();
         }
+
         //Set initialSick sick agents at the start
         //of the simulation
-        int next = -1;
-        if(initialAgents.size()>0) {
-            next = initialAgents.remove(0);
-        }
         for(int counter = 0;counter<initialSick;counter++) {
-            agents.get(next).initialSick();
-            if(initialAgents.size()>0) {
-                next = initialAgents.remove(0);
-            }
-        }
-
-        //Set initialImmune immune agents at the start of
-        //the simulation
-        for (int counter = 0;counter<initialImmune;counter++) {
-            if (counter<initialImmune) {
-                agents.get(next).setImmune();
-                if (initialAgents.size()>0) {
-                    next = initialAgents.remove(0);
-                }
-            }
+            agents.get(initialAgents.get(counter)).initialSick();
         }
     }
 
@@ -378,69 +483,35 @@ public class Display extends Application{
      * option with overlapping agents
      */
     public void initializeRandomGrid() {
-
-        //set row and column constraints
-        for(int i=0;i<rows;i++) {
-            RowConstraints rowConstraints = new RowConstraints();
-            rowConstraints.setMinHeight(height/rows);
-
-            gridPane.getRowConstraints().add(rowConstraints);
-        }
-        for(int i=0;i<columns;i++) {
-            ColumnConstraints columnConstraints = new ColumnConstraints();
-            columnConstraints.setMinWidth(width/columns);
-
-            gridPane.getColumnConstraints().add(columnConstraints);
-        }
-        //set gridpane size
-        gridPane.setMinSize(700,700);
-        gridPane.setTranslateX(0);
-        gridPane.setTranslateY(0);
+        SimulationEvents.Placement placed = SimulationEvents.recording()
+                ? new SimulationEvents.Placement() : null;
+        SimulationEvents.begin(placed);
         //create n randomly placed agents
         if (n<=rows*columns) {
             //hashset to keep track of generated coordinates
             //and make sure there are no duplicates
             HashSet<List<Integer>> coords = new HashSet<>();
             for (int i = 0; i < n; i++) {
-                int row = (int) (Math.random() * rows);
-                int col = (int) (Math.random() * columns);
+                int row = placement.nextInt(rows);
+                int col = placement.nextInt(columns);
                 while (coords.contains(List.of(row,col))) {
-                    row = (int) (Math.random() * rows);
-                    col = (int) (Math.random() * columns);
+                    row = placement.nextInt(rows);
+                    col = placement.nextInt(columns);
                 }
                 coords.add(List.of(row,col));
                 //create agent
                 int x = col*(width/columns) + (width/columns)/2;
                 int y = row*(height/rows) + (height/rows)/2;
                 Agent agent = new Agent(x, y, this, row*columns+col);
-                //create new thread
-                Thread agentThread = new Thread(agent);
-                agentThread.start();
-                //get agent's circle and add it to the gridpane
-                Circle circle = agent.getCircle();
-                gridPane.add(circle,col,row);
+                //start the agent in the configured execution mode
+                executor.start(agent);
                 //add agent to our list of agents
                 agents.add(agent);
             }
         }
-        //add gridpane to pane
-        pane.getChildren().add(gridPane);
-
-
+        commitPlacement(placed);
         //calculate each agent's neighbors
-        for (Agent agent:agents) {
-            for (Agent agent1:agents) {
-
-                double xDistance = agent1.getXPosition()-agent.getXPosition();
-                double yDistance = agent1.getYPosition()-agent.getYPosition();
-                double distance = Math.sqrt((yDistance*yDistance)+
-                                    (xDistance*xDistance));
-                if (distance<=exposureDistance && !agent.equals(agent1)) {
-                    agent.addNeighbor(agent1);
-                }
-            }
-
-        }
+        connectNeighbors(true);
         //add initialImmune immune agents at the start of the sim
         //not randomized since placement is already randomized
         int counter = 0;
@@ -462,29 +533,256 @@ public class Display extends Application{
     }
 
     /**
-     * This method updates the plot with new data points
-     * from the Counters class
+     * This method ends the placement event of an initialize
+     * method and records it if Flight Recorder wants it
+     * @param placed the event begun when placing started,
+     *               null when not recording
+     */
+    private void commitPlacement(SimulationEvents.Placement placed) {
+        if(SimulationEvents.end(placed)) {
+            placed.layout = SimulationEvents.layout(main);
+            placed.agents = agents.size();
+            placed.commit();
+        }
+    }
+
+    /**
+     * This method makes agents closer than exposuredistance
+     * neighbors of each other. A SpatialIndex over the agent
+     * positions means only agents in adjacent cells are compared,
+     * and the neighbors are kept in one shared ContactGraph.
+     * With the "contacts" option they are read from the
+     * ContactFile instead.
+     * @param inclusive whether agents exactly exposuredistance
+     *                  apart are neighbors
+     */
+    private void connectNeighbors(boolean inclusive) {
+        float[] x = new float[agents.size()];
+        float[] y = new float[agents.size()];
+        for(int i=0;i<agents.size();i++) {
+            x[i] = (float)agents.get(i).getXPosition();
+            y[i] = (float)agents.get(i).getYPosition();
+        }
+        SimulationEvents.Neighbors built = SimulationEvents.recording()
+                ? new SimulationEvents.Neighbors() : null;
+        SimulationEvents.begin(built);
+        ContactGraph contacts;
+        if(main.getContactsFile()!=null) {
+            contacts = ContactFile.read(main.getContactsFile(),agents.size(),
+                                        false,main.getWorkers());
+        }
+        else {
+            SpatialIndex index = new SpatialIndex(x,y,agents.size(),
+                                                    exposureDistance);
+            contacts = ContactGraph.build(index,agents.size(),
+                                    exposureDistance,inclusive,false);
+        }
+        if(SimulationEvents.end(built)) {
+            built.source = SimulationEvents.source(main);
+            built.agents = agents.size();
+            built.edges = contacts.edgeCount();
+            built.commit();
+        }
+        Agent[] all = agents.toArray(new Agent[0]);
+        for(int i=0;i<all.length;i++) {
+            all[i].setContacts(contacts,all,i);
+        }
+        //draw the agents at their positions in their current state
+        renderer.show(x,y,i -> all[i].getState());
+    }
+
+    /**
+     * This method is the startup method when the
+     * "engine virtual" option is specified in the config
+     * text file. The agents live in the Simulation engine
+     * and the display only draws them and listens for
+     * their transitions.
+     */
+    public void initializeVirtual() {
+        //continue from a checkpoint if there is one,
+        //a restart goes back to the same checkpoint
+        boolean resumed = main.getResume()!=null;
+        simulation = resumed ? Checkpoint.read(main,main.getResume())
+                             : new Simulation(main,seed);
+        counters = simulation.getCounters();
+        monitor.watch(simulation);
+        Simulation shown = simulation;
+        renderer.show(shown.getPopulation().xs(),shown.getPopulation().ys(),
+                        shown::getState);
+        simulation.addListener(this);
+        if(!resumed) {
+            simulation.seed();
+        }
+    }
+
+    /**
+     * Redraw an agent and add an event to the
+     * text field when the engine changes its state
+     * @param agentID the agent ID number
+     * @param day the day the change happened on
+     * @param from the previous AgentState
+     * @param to the new AgentState
+     */
+    @Override
+    public void transition(int agentID, int day, int from, int to) {
+        renderer.markDirty(agentID);
+        if(output!=null) {
+            output.transition(agentID,day,from,to);
+        }
+        switch (to) {
+            case AgentState.SICK:
+                if(from==AgentState.VULNERABLE) {
+                    addEvent(agentID,day,EventLog.SICK_AT_START);
+                }
+                else {
+                    addEvent(agentID,day,EventLog.SICK);
+                }
+                break;
+            case AgentState.IMMUNE:
+                if(from==AgentState.SICK) {
+                    addEvent(agentID,day,EventLog.RECOVERED);
+                }
+                break;
+            case AgentState.DEAD:
+                addEvent(agentID,day,EventLog.DIED);
+                break;
+        }
+    }
+
+    /**
+     * Update the plot at the end of each simulated day
+     * @param day the day that ended
+     */
+    @Override
+    public void dayEnded(int day) {
+        updateCounters();
+    }
+
+    /**
+     * This method records a snapshot of the counters and updates
+     * the plot. Each line only gets the points its Downsampler
+     * picked plus the latest day, so long runs stay at
+     * CHART_POINTS points per line.
      */
     public void updateCounters() {
-        sickLine.getData().add(new XYChart.Data
-                (Counters.getDays(),Counters.getSickCounter()));
-        deadLine.getData().add(new XYChart.Data
-                (Counters.getDays(),Counters.getDeadCounter()));
-        vulnerableLine.getData().add(new XYChart.Data
-                (Counters.getDays(),Counters.getVulnerableCounter()));
-        immuneLine.getData().add(new XYChart.Data
-                (Counters.getDays(),Counters.getImmuneCounter()));
+        SimulationEvents.UpdateCounters updated = SimulationEvents.recording()
+                ? new SimulationEvents.UpdateCounters() : null;
+        SimulationEvents.begin(updated);
+        Counters.Snapshot snapshot = counters.snapshot();
+        history.add(snapshot);
+        if(output!=null) {
+            output.counts(snapshot);
+        }
+        int today = history.size()-1;
+        for(int s=0;s<lines.size();s++) {
+            List<XYChart.Data<Number,Number>> data = lines.get(s).getData();
+            Downsampler sampler = samplers[s];
+            if(sampler.update()) {
+                data.clear();
+                shownPicks[s] = 0;
+            }
+            else {
+                //drop the previous latest day point
+                data.subList(shownPicks[s],data.size()).clear();
+            }
+            for(int k=shownPicks[s];k<sampler.pickedCount();k++) {
+                int day = sampler.pickedDay(k);
+                data.add(new XYChart.Data<>(history.getFirstDay()+day,
+                                            history.get(s,day)));
+            }
+            shownPicks[s] = sampler.pickedCount();
+            if(sampler.pickedDay(shownPicks[s]-1)<today) {
+                data.add(new XYChart.Data<>(history.getFirstDay()+today,
+                                            history.get(s,today)));
+            }
+        }
+        if(SimulationEvents.end(updated)) {
+            updated.day = snapshot.getDay();
+            updated.agents = snapshot.getSick()+snapshot.getDead()+
+                    snapshot.getVulnerable()+snapshot.getImmune();
+            updated.commit();
+        }
     }
 
     /**
-     * This method adds an event to the
-     * event text field
-     * @param string The string to append
+     * This method puts an agent on the renderer's dirty list,
+     * so it is redrawn in its new state in the next frame
+     * @param index the agent's index in the agents list
      */
-    public void addEvent(String string) {
-        events.appendText(string+"\n");
+    public void markDirty(int index) {
+        renderer.markDirty(index);
     }
 
+    /**
+     * This method adds an event to the event log,
+     * from any thread. The event list shows it in the next frame.
+     * @param agentID the agent the event is about
+     * @param day the day of the event
+     * @param type the EventLog event type
+     */
+    public void addEvent(int agentID, int day, byte type) {
+        eventLog.add(agentID,day,type);
+        //the engine's transitions already reach the output directly
+        if(output!=null && simulation==null) {
+            switch (type) {
+                case EventLog.SICK_AT_START:
+                    output.transition(agentID,day,AgentState.VULNERABLE,
+                                        AgentState.SICK);
+                    break;
+                case EventLog.SICK:
+                    output.transition(agentID,day,AgentState.EXPOSED,
+                                        AgentState.SICK);
+                    break;
+                case EventLog.RECOVERED:
+                    output.transition(agentID,day,AgentState.SICK,
+                                        AgentState.IMMUNE);
+                    break;
+                default:
+                    output.transition(agentID,day,AgentState.SICK,
+                                        AgentState.DEAD);
+            }
+        }
+    }
+
+    /**
+     * Write out the event spill file, the output files
+     * and the checkpoint when the window closes
+     */
+    @Override
+    public void stop() {
+        //the frame timers would keep the closed window's nodes alive
+        renderer.stop();
+        events.stop();
+        if(main.isJmx()) {
+            monitor.unregister();
+        }
+        eventLog.close();
+        if(output!=null) {
+            output.close();
+        }
+        //save the engine so a later run can resume it
+        if(simulation!=null && main.getCheckpoint()!=null) {
+            Checkpoint.write(simulation,main.getCheckpoint());
+        }
+    }
+
+
+    /**
+     * This method returns the seed of the current run,
+     * agents draw from their own stream of it
+     * @return seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * This method returns the counters the agents move in
+     * @return counters
+     */
+    public Counters getCounters() {
+        return counters;
+    }
 
     /**
      * This method returns the incubation time variable
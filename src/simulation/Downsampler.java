@@ -0,0 +1,129 @@
+package simulation;
+
+/**
+ * This class picks at most maxPoints days of one series of a
+ * CounterHistory to plot, with the largest-triangle-three-buckets
+ * method. The days after day 0 are split into buckets of equal
+ * width, and each bucket keeps the day that makes the largest
+ * triangle with the day kept before it and the average of the
+ * next bucket. A bucket is decided once the bucket after it is
+ * complete and never changes again, so each new day costs
+ * constant time. When too many buckets are decided, the width
+ * doubles and the picks are made again from the history.
+ */
+public class Downsampler {
+    private final CounterHistory history;
+    private final int series;
+    private final int maxPoints;
+    private int width = 1;
+    //days that were picked, day 0 is always first
+    private int[] picked = new int[16];
+    private int pickedCount = 0;
+    //first day of the first bucket that is not decided yet
+    private int nextBucket = 1;
+
+    /**
+     * Constructor for the downsampler
+     * @param history the recorded counters
+     * @param series the CounterHistory series to downsample
+     * @param maxPoints the most points to plot, at least 3
+     */
+    public Downsampler(CounterHistory history, int series, int maxPoints) {
+        this.history = history;
+        this.series = series;
+        this.maxPoints = Math.max(3,maxPoints);
+    }
+
+    /**
+     * Decide the buckets completed by the newly recorded days
+     * @return true if the width changed and all picks were
+     *         made again, false if picks were only added
+     */
+    public boolean update() {
+        int size = history.size();
+        if(pickedCount==0 && size>0) {
+            picked[pickedCount++] = 0;
+        }
+        while(nextBucket+2*width<=size) {
+            decideBucket(size);
+        }
+        //the latest day is plotted too, after the picks
+        boolean rebuilt = false;
+        while(pickedCount+1>maxPoints) {
+            width *= 2;
+            pickedCount = 1;
+            nextBucket = 1;
+            while(nextBucket+2*width<=size) {
+                decideBucket(size);
+            }
+            rebuilt = true;
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Pick the day of the next bucket with the largest triangle
+     * @param size the number of recorded days
+     */
+    private void decideBucket(int size) {
+        int start = nextBucket;
+        int end = start+width;
+        //average of the bucket after this one
+        int nextEnd = Math.min(end+width,size);
+        double averageX = 0;
+        double averageY = 0;
+        for(int day=end;day<nextEnd;day++) {
+            averageX += day;
+            averageY += history.get(series,day);
+        }
+        averageX /= nextEnd-end;
+        averageY /= nextEnd-end;
+
+        int previous = picked[pickedCount-1];
+        double previousY = history.get(series,previous);
+        int best = start;
+        double bestArea = -1;
+        for(int day=start;day<end;day++) {
+            double area = Math.abs((previous-averageX)*
+                    (history.get(series,day)-previousY) -
+                    (previous-day)*(averageY-previousY));
+            if(area>bestArea) {
+                bestArea = area;
+                best = day;
+            }
+        }
+        if(pickedCount==picked.length) {
+            int[] grown = new int[picked.length*2];
+            System.arraycopy(picked,0,grown,0,pickedCount);
+            picked = grown;
+        }
+        picked[pickedCount++] = best;
+        nextBucket = end;
+    }
+
+    /**
+     * Return the number of picked days
+     * @return pickedCount
+     */
+    public int pickedCount() {
+        return pickedCount;
+    }
+
+    /**
+     * Return a picked day, in increasing order
+     * @param k the pick number
+     * @return the day
+     */
+    public int pickedDay(int k) {
+        return picked[k];
+    }
+
+    /**
+     * Forget all picks, for a cleared history
+     */
+    public void clear() {
+        width = 1;
+        pickedCount = 0;
+        nextBucket = 1;
+    }
+}
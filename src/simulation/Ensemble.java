@@ -0,0 +1,294 @@
+package simulation;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs many replicas of the same config on the
+ * headless engine, in parallel on a fixed pool of threads.
+ * Grid placements are the same in every replica, so their
+ * positions and contact graph are built once and shared.
+ * Each replica records its own days and is merged into the
+ * totals as soon as it finishes. For every day the totals
+ * keep the sum and the value of each counter in each merged
+ * replica, so the percentile bands are exact values of
+ * replicas, read off by rank, at 16 bytes per replica and day.
+ * A replica that finished early keeps counting with its
+ * final counters on the days after.
+ * Replica r always gets seed r of the config's seed, and
+ * the totals don't depend on the order replicas finish in,
+ * so the results are the same for any number of threads.
+ */
+public class Ensemble {
+    private static final double[] BANDS = {0.05, 0.5, 0.95};
+    private static final String[] NAMES =
+            {"sick","dead","vulnerable","immune"};
+
+    private final Main config;
+    private final int replicas;
+    private final Simulation layout;
+
+    private int merged = 0;
+    private int days = 0;
+    //counter s of the r-th merged replica on day d is at
+    //values[d][s*replicas+r]
+    private int[][] values = new int[64][];
+    private long[][] sums = new long[64][];
+    //values and sums of the final counters of merged replicas
+    private final int[] finalValues;
+    private long[] finalSums = new long[4];
+    private final int[] peaks;
+    private long peakSum = 0;
+    private long peakDaySum = 0;
+
+    /**
+     * Constructor for the ensemble
+     * @param config the parsed config file
+     * @param replicas the number of replicas to run
+     */
+    public Ensemble(Main config, int replicas) {
+        this.config = config;
+        this.replicas = replicas;
+        finalValues = new int[4*replicas];
+        peaks = new int[replicas];
+        layout = config.isGrid() || config.getPopulationFile()!=null ||
+                config.getContactsFile()!=null
+                ? new Simulation(config) : null;
+    }
+
+    /**
+     * Run all replicas, each until its outbreak is over
+     * or for the configured number of days
+     * @param threads the number of replicas run at a time
+     */
+    public void run(int threads) {
+        ExecutorService pool =
+                Executors.newFixedThreadPool(Math.max(1,threads));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(int r=0;r<replicas;r++) {
+            long seed = RandomStreams.run(config.getSeed(),r);
+            tasks.add(() -> {
+                runReplica(seed);
+                return null;
+            });
+        }
+        try {
+            for(Future<Void> result:pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Run one replica and merge it into the totals
+     * @param seed the seed of the replica
+     */
+    private void runReplica(long seed) {
+        Simulation simulation = layout!=null
+                ? new Simulation(config,layout.getPopulation(),
+                                    layout.getContacts(),seed)
+                : new Simulation(config,seed);
+        Counters counters = simulation.getCounters();
+        CounterHistory history = new CounterHistory();
+        simulation.addListener(new SimulationListener() {
+            @Override
+            public void transition(int agentID, int day, int from, int to) {
+            }
+
+            @Override
+            public void dayEnded(int day) {
+                history.add(counters.snapshot());
+            }
+        });
+        simulation.seed();
+        simulation.run(config.getMaxDays());
+        if(history.size()==0) {
+            history.add(counters.snapshot());
+        }
+        merge(history);
+    }
+
+    /**
+     * Add the days of a finished replica to the totals
+     * @param history the counters of each day of the replica
+     */
+    private synchronized void merge(CounterHistory history) {
+        int length = history.size();
+        //replicas merged before all ended earlier than the new days
+        while(days<length) {
+            if(days==values.length) {
+                int[][] grownValues = new int[days*2][];
+                long[][] grownSums = new long[days*2][];
+                System.arraycopy(values,0,grownValues,0,days);
+                System.arraycopy(sums,0,grownSums,0,days);
+                values = grownValues;
+                sums = grownSums;
+            }
+            values[days] = finalValues.clone();
+            sums[days] = finalSums.clone();
+            days++;
+        }
+        int r = merged;
+        for(int d=0;d<days;d++) {
+            int day = Math.min(d,length-1);
+            for(int s=0;s<4;s++) {
+                int value = history.get(s,day);
+                values[d][s*replicas+r] = value;
+                sums[d][s] += value;
+            }
+        }
+        int peak = 0;
+        int peakDay = 0;
+        for(int s=0;s<4;s++) {
+            int value = history.get(s,length-1);
+            finalValues[s*replicas+r] = value;
+            finalSums[s] += value;
+        }
+        for(int d=0;d<length;d++) {
+            if(history.get(Counters.SICK,d)>peak) {
+                peak = history.get(Counters.SICK,d);
+                peakDay = d;
+            }
+        }
+        peaks[r] = peak;
+        peakSum += peak;
+        peakDaySum += peakDay;
+        merged++;
+    }
+
+    /**
+     * Return the values of one counter in the merged replicas,
+     * sorted, so percentiles can be read off by rank
+     * @param all the values of all counters of a day
+     * @param offset the first value of the counter
+     * @return the sorted values
+     */
+    private int[] sorted(int[] all, int offset) {
+        int[] counter = Arrays.copyOfRange(all,offset,offset+merged);
+        Arrays.sort(counter);
+        return counter;
+    }
+
+    /**
+     * Return a percentile of sorted values, the value of
+     * the replica at rank ceil(q*merged)
+     * @param sorted the sorted values of the merged replicas
+     * @param q the percentile, 0 to 1
+     * @return the counter value
+     */
+    private int percentile(int[] sorted, double q) {
+        int rank = (int)Math.max(1,Math.ceil(q*sorted.length));
+        return sorted[rank-1];
+    }
+
+    /**
+     * Return the mean and the 5th, 50th and 95th percentile
+     * of a counter on a day
+     * @param day the day
+     * @param counter the counter, a Counters constant
+     * @return mean, p5, p50 and p95
+     */
+    public synchronized double[] getBand(int day, int counter) {
+        int[] sorted = sorted(values[day],counter*replicas);
+        double[] band = new double[1+BANDS.length];
+        band[0] = (double)sums[day][counter]/merged;
+        for(int b=0;b<BANDS.length;b++) {
+            band[1+b] = percentile(sorted,BANDS[b]);
+        }
+        return band;
+    }
+
+    /**
+     * Return the mean and the 5th, 50th and 95th percentile
+     * of the highest sick counter of the replicas
+     * @return mean, p5, p50 and p95
+     */
+    public synchronized double[] getPeakBand() {
+        int[] sorted = sorted(peaks,0);
+        double[] band = new double[1+BANDS.length];
+        band[0] = (double)peakSum/merged;
+        for(int b=0;b<BANDS.length;b++) {
+            band[1+b] = percentile(sorted,BANDS[b]);
+        }
+        return band;
+    }
+
+    /**
+     * Return the number of days in the bands
+     * @return days
+     */
+    public synchronized int getDays() {
+        return days;
+    }
+
+    /**
+     * Print the mean and the 5th, 50th and 95th percentile
+     * of every counter for each day, as comma separated values
+     * @param out the stream to print to
+     */
+    public synchronized void printBands(PrintStream out) {
+        StringBuilder line = new StringBuilder("day");
+        for(String name:NAMES) {
+            line.append(',').append(name).append("_mean");
+            for(double q:BANDS) {
+                line.append(',').append(name).append("_p")
+                        .append(Math.round(q*100));
+            }
+        }
+        out.println(line);
+        for(int d=0;d<days;d++) {
+            line.setLength(0);
+            line.append(d);
+            for(int s=0;s<4;s++) {
+                double[] band = getBand(d,s);
+                line.append(',').append(band[0]);
+                for(int b=1;b<band.length;b++) {
+                    line.append(',').append((int)band[b]);
+                }
+            }
+            out.println(line);
+        }
+    }
+
+    /**
+     * Print the distribution of the highest sick counter of
+     * the replicas and the mean day it was reached on
+     * @param out the stream to print to
+     */
+    public synchronized void printPeaks(PrintStream out) {
+        if(merged==0) {
+            return;
+        }
+        double[] band = getPeakBand();
+        StringBuilder line = new StringBuilder();
+        line.append(merged).append(" replicas, peak sick mean ")
+                .append(band[0]);
+        for(int b=0;b<BANDS.length;b++) {
+            line.append(", p").append(Math.round(BANDS[b]*100)).append(' ')
+                    .append((int)band[1+b]);
+        }
+        line.append(", mean peak day ").append((double)peakDaySum/merged);
+        out.println(line);
+    }
+
+    /**
+     * Return the number of replicas merged so far
+     * @return merged
+     */
+    public synchronized int getMerged() {
+        return merged;
+    }
+}
@@ -0,0 +1,103 @@
+package simulation;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.ListView;
+
+import java.util.Collections;
+
+/**
+ * This class shows an EventLog in a ListView. The list's
+ * items are a view of the log's sequence numbers, ListView
+ * only creates cells for the visible rows and only those
+ * rows are formatted as text. Once per frame the view
+ * catches up with the events added and dropped since.
+ */
+public class EventListView {
+    private final EventLog log;
+    private final Rows rows = new Rows();
+    private final ListView<String> view = new ListView<>(rows);
+    private final AnimationTimer timer;
+
+    /**
+     * The rows of the list, row i is event shownFirst+i
+     */
+    private class Rows extends ObservableListBase<String> {
+        private long shownFirst = 0;
+        private int shownSize = 0;
+
+        @Override
+        public String get(int index) {
+            return log.format(shownFirst+index);
+        }
+
+        @Override
+        public int size() {
+            return shownSize;
+        }
+
+        /**
+         * Report the events dropped from the front and
+         * added at the end since the last frame
+         * @return whether anything changed
+         */
+        private boolean update() {
+            long first;
+            long end;
+            synchronized (log) {
+                first = log.first();
+                end = log.end();
+            }
+            if(first==shownFirst && end==shownFirst+shownSize) {
+                return false;
+            }
+            int removed = (int)Math.min(first-shownFirst,shownSize);
+            beginChange();
+            if(removed>0) {
+                nextRemove(0,Collections.nCopies(removed,""));
+            }
+            shownFirst = first;
+            int kept = shownSize-removed;
+            shownSize = (int)(end-first);
+            if(shownSize>kept) {
+                nextAdd(kept,shownSize);
+            }
+            endChange();
+            return true;
+        }
+    }
+
+    /**
+     * Constructor for the view
+     * @param log the event log to show
+     */
+    public EventListView(EventLog log) {
+        this.log = log;
+        view.setFixedCellSize(24);
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                //follow the newest event like the text field did
+                if(rows.update() && rows.size()>0) {
+                    view.scrollTo(rows.size()-1);
+                }
+            }
+        };
+        timer.start();
+    }
+
+    /**
+     * Return the ListView to add to the scene
+     * @return view
+     */
+    public ListView<String> getView() {
+        return view;
+    }
+
+    /**
+     * Stop following the log
+     */
+    public void stop() {
+        timer.stop();
+    }
+}
@@ -0,0 +1,152 @@
+package simulation;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This class keeps the history of the simulation as
+ * primitive records (agent ID, day, type) in a ring buffer
+ * of fixed capacity. Events get a sequence number as they
+ * are added, once the ring is full the oldest ones are
+ * dropped, or first written to a spill file if there is one.
+ * Events are only formatted as text when they are shown
+ * or spilled. All methods can be called from any thread.
+ */
+public class EventLog {
+    public static final byte SICK_AT_START = 0;
+    public static final byte SICK = 1;
+    public static final byte RECOVERED = 2;
+    public static final byte DIED = 3;
+
+    private final int capacity;
+    private final int[] agents;
+    private final int[] days;
+    private final byte[] types;
+    //sequence numbers of the oldest kept event and the next event
+    private long first = 0;
+    private long end = 0;
+    private Writer spill;
+
+    /**
+     * Constructor for the log
+     * @param capacity the number of events kept in memory
+     * @param spillFile file to write dropped events to,
+     *                  or null to just drop them
+     */
+    public EventLog(int capacity, String spillFile) {
+        this.capacity = Math.max(1,capacity);
+        agents = new int[this.capacity];
+        days = new int[this.capacity];
+        types = new byte[this.capacity];
+        if(spillFile!=null) {
+            try {
+                spill = new BufferedWriter(new FileWriter(spillFile));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Add an event
+     * @param agentID the agent the event is about
+     * @param day the day of the event
+     * @param type SICK_AT_START, SICK, RECOVERED or DIED
+     */
+    public synchronized void add(int agentID, int day, byte type) {
+        if(end-first==capacity) {
+            if(spill!=null) {
+                try {
+                    spill.write(format(first));
+                    spill.write('\n');
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            first++;
+        }
+        int slot = (int)(end%capacity);
+        agents[slot] = agentID;
+        days[slot] = day;
+        types[slot] = type;
+        end++;
+    }
+
+    /**
+     * Return the sequence number of the oldest kept event
+     * @return first
+     */
+    public synchronized long first() {
+        return first;
+    }
+
+    /**
+     * Return the sequence number the next event will get
+     * @return end
+     */
+    public synchronized long end() {
+        return end;
+    }
+
+    /**
+     * Format an event as a line of text, like the history
+     * text field used to show it
+     * @param seq the sequence number of the event
+     * @return the text, or an empty string if the
+     *         event was already dropped
+     */
+    public synchronized String format(long seq) {
+        if(seq<first || seq>=end) {
+            return "";
+        }
+        int slot = (int)(seq%capacity);
+        String agent = "Agent " + agents[slot];
+        switch (types[slot]) {
+            case SICK_AT_START:
+                return agent + " was sick at the start";
+            case SICK:
+                return agent + " got sick on day " + days[slot];
+            case RECOVERED:
+                return agent + " recovered on day " + days[slot];
+            default:
+                return agent + " died on day " + days[slot];
+        }
+    }
+
+    /**
+     * Drop all events, for a restarted simulation.
+     * Kept events are spilled first.
+     */
+    public synchronized void clear() {
+        if(spill!=null) {
+            try {
+                for(long seq=first;seq<end;seq++) {
+                    spill.write(format(seq));
+                    spill.write('\n');
+                }
+                spill.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        first = end;
+    }
+
+    /**
+     * Spill the kept events too and close the spill file,
+     * which then has the whole history
+     */
+    public synchronized void close() {
+        clear();
+        if(spill!=null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            spill = null;
+        }
+    }
+}
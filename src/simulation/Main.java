@@ -11,6 +11,10 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * This is the main class of the application.
@@ -133,6 +137,176 @@ public class Main {
         return columns;
     }
 
+    /**
+     * Return whether the display should observe the
+     * virtual-time engine instead of running agent threads
+     * @return virtualEngine
+     */
+    public boolean isVirtualEngine() {
+        return virtualEngine;
+    }
+
+    /**
+     * Return what the agents run on
+     * @return execution
+     */
+    public AgentExecutor.Mode getExecution() {
+        return execution;
+    }
+
+    /**
+     * Return the number of worker threads for the pooled mode
+     * @return workers
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Return whether the engine stores each contact only once
+     * @return halfGraph
+     */
+    public boolean isHalfGraph() {
+        return halfGraph;
+    }
+
+    /**
+     * Return the number of events kept in memory
+     * @return eventLogSize
+     */
+    public int getEventLogSize() {
+        return eventLogSize;
+    }
+
+    /**
+     * Return the file older events are written to
+     * @return eventSpill, null if events are just dropped
+     */
+    public String getEventSpill() {
+        return eventSpill;
+    }
+
+    /**
+     * Return the day limit for headless runs
+     * @return maxDays, 0 for no limit
+     */
+    public int getMaxDays() {
+        return maxDays;
+    }
+
+    /**
+     * Return the seed of all random numbers
+     * @return seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Return the binary file the agents are read from
+     * @return populationFile, null to place the agents
+     */
+    public String getPopulationFile() {
+        return populationFile;
+    }
+
+    /**
+     * Return whether the population file has initial states
+     * @return populationStates
+     */
+    public boolean isPopulationStates() {
+        return populationStates;
+    }
+
+    /**
+     * Return the edge list file the neighbors are read from
+     * @return contactsFile, null to find neighbors by distance
+     */
+    public String getContactsFile() {
+        return contactsFile;
+    }
+
+    /**
+     * Return the target speed of a run
+     * @return speed in days per second, 0 for as fast as possible
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Return whether runs register their MBean
+     * @return jmx
+     */
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    /**
+     * Return the number of replicas of a headless run
+     * @return replicas
+     */
+    public int getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Return the file the engine state is saved to
+     * @return checkpoint, null to not save it
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Return how often a headless run saves its state
+     * @return checkpointEvery in days, 0 for only at the end
+     */
+    public int getCheckpointEvery() {
+        return checkpointEvery;
+    }
+
+    /**
+     * Return the checkpoint file the engine continues from
+     * @return resume, null to start a new simulation
+     */
+    public String getResume() {
+        return resume;
+    }
+
+    /**
+     * Return the path the output file names start with
+     * @return output, null to not write any output files
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * Return whether the output files have binary records
+     * @return binaryOutput, false for CSV
+     */
+    public boolean isBinaryOutput() {
+        return binaryOutput;
+    }
+
+    /**
+     * Return the option lines of the config file,
+     * in the order they were read
+     * @return lines
+     */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * Return the sweep lines of the config file
+     * @return sweeps, empty if there is nothing to sweep
+     */
+    public List<String> getSweeps() {
+        return sweeps;
+    }
+
     //all the config variables
     private int width = 200;
     private int height = 200;
@@ -148,93 +322,276 @@ public class Main {
     private int initialImmune = 0;
     private int rows = 0;
     private int columns = 0;
+    private boolean virtualEngine = false;
+    private int maxDays = 0;
+    private int replicas = 1;
+    private double speed = 0;
+    private boolean jmx = false;
+    private String populationFile = null;
+    private boolean populationStates = false;
+    private String contactsFile = null;
+    //runs without a seed option get a new one each time
+    private long seed = new SplittableRandom().nextLong();
+    private String checkpoint = null;
+    private int checkpointEvery = 0;
+    private String resume = null;
+    private String output = null;
+    private boolean binaryOutput = false;
+    private boolean halfGraph = false;
+    private int eventLogSize = 10000;
+    private String eventSpill = null;
+    private AgentExecutor.Mode execution = AgentExecutor.Mode.PLATFORM;
+    private int workers = Runtime.getRuntime().availableProcessors();
 
     private String configFile = "";
-    private Display display;
+    //the option lines and the sweep lines of the config file
+    private final List<String> lines = new ArrayList<>();
+    private final List<String> sweeps = new ArrayList<>();
 
     /**
      * main method of the application
-     * launch Display
+     * launch Display, or run the simulation without
+     * a GUI if the -headless flag is given
      * @param args command line arguments
+     * @throws FileNotFoundException
      */
-    public static void main(String[] args) {
-        Application.launch(Display.class, args);
+    public static void main(String[] args) throws FileNotFoundException {
+        if(Arrays.asList(args).contains("-headless")) {
+            runHeadless(args);
+        }
+        else {
+            Application.launch(Display.class, args);
+        }
     }
 
-
     /**
-     * This method reads and parses the config text file
-     * @param display the application display
+     * Run the virtual-time engine as fast as possible and
+     * print the counters of each day to standard output
      * @param args command line arguments
      * @throws FileNotFoundException
      */
-    public void start(Display display, String[] args)
+    private static void runHeadless(String[] args)
                         throws FileNotFoundException {
-        this.display = display;
-        //get the text file name
+        Main main = new Main();
+        main.start(args);
+        long start = System.nanoTime();
+        if(!main.getSweeps().isEmpty()) {
+            Sweep sweep = new Sweep(main);
+            sweep.run(main.getWorkers());
+            sweep.print(System.out);
+            System.err.println(sweep.size() + " points in " +
+                    (System.nanoTime()-start)/1_000_000 + "ms");
+            return;
+        }
+        if(main.getReplicas()>1) {
+            Ensemble ensemble = new Ensemble(main,main.getReplicas());
+            ensemble.run(main.getWorkers());
+            ensemble.printBands(System.out);
+            ensemble.printPeaks(System.err);
+            System.err.println(ensemble.getMerged() + " replicas in " +
+                    (System.nanoTime()-start)/1_000_000 + "ms");
+            return;
+        }
+        Simulation simulation = main.getResume()!=null
+                ? Checkpoint.read(main,main.getResume())
+                : new Simulation(main);
+        simulation.addListener(new ConsoleReporter(System.out,
+                                    simulation.getCounters()));
+        OutputWriter output = null;
+        if(main.getOutput()!=null) {
+            output = new OutputWriter(main.getOutput(),main.isBinaryOutput());
+            simulation.addListener(output.listenTo(simulation.getCounters()));
+        }
+        //listeners added before seeding see the initial transitions
+        if(main.getResume()==null) {
+            simulation.seed();
+        }
+        //paces the run, with jmx true it can also be watched,
+        //paused and slowed down over JMX
+        SimulationMonitor monitor = new SimulationMonitor("headless",
+                                        () -> 0,main.getSpeed());
+        monitor.watch(simulation);
+        if(main.isJmx()) {
+            monitor.register();
+        }
+        int maxDays = main.getMaxDays();
+        int every = main.getCheckpointEvery();
+        try {
+            while(!simulation.isFinished() &&
+                    (maxDays<=0 || simulation.getDay()<maxDays)) {
+                monitor.awaitTurn();
+                monitor.step();
+                if(every>0 && main.getCheckpoint()!=null &&
+                        simulation.getDay()%every==0) {
+                    Checkpoint.write(simulation,main.getCheckpoint());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if(main.isJmx()) {
+                monitor.unregister();
+            }
+        }
+        if(main.getCheckpoint()!=null) {
+            Checkpoint.write(simulation,main.getCheckpoint());
+        }
+        if(output!=null) {
+            output.close();
+        }
+        long elapsed = System.nanoTime()-start;
+        System.err.println(simulation.getDay() + " days of " +
+                simulation.size() + " agents in " +
+                elapsed/1_000_000 + "ms, seed " + simulation.getSeed());
+    }
+
+
+    /**
+     * This method reads and parses the config text file.
+     * It takes no Display so that headless runs can
+     * load this class without JavaFX on the classpath.
+     * @param args command line arguments
+     * @throws FileNotFoundException
+     */
+    public void start(String[] args) throws FileNotFoundException {
+        //get the text file name, skipping flags
         for(String s:args) {
-            configFile=s;
+            if(!s.startsWith("-")) {
+                configFile=s;
+            }
         }
-        String[] words;
         if(!configFile.equals("")) {
             //parse each line of the text file
             try (BufferedReader reader =
                          new BufferedReader(new FileReader(configFile))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    //split line at spaces
-                    words = line.split(" ");
-                    //parse line based on first word
-                    switch (words[0]) {
-                        case "dimensions":
-                            width = Integer.parseInt(words[1]);
-                            height = Integer.parseInt(words[2]);
-                            break;
-                        case "exposuredistance":
-                            exposureDistance = Integer.parseInt(words[1]);
-                            break;
-                        case "incubation":
-                            incubation = Integer.parseInt(words[1]);
-                            break;
-                        case "sickness":
-                            sickness = Integer.parseInt(words[1]);
-                            break;
-                        case "recover":
-                            recover = Double.parseDouble(words[1]);
-                            break;
-                        case "grid":
-                            grid = true;
-                            rows = Integer.parseInt(words[1]);
-                            columns = Integer.parseInt(words[2]);
-                            random = false;
-                            randomGrid = false;
-                            break;
-                        case "random":
-                            n = Integer.parseInt(words[1]);
-                            break;
-                        case "randomgrid":
-                            rows = Integer.parseInt(words[1]);
-                            columns = Integer.parseInt(words[2]);
-                            n = Integer.parseInt(words[3]);
-                            randomGrid = true;
-                            grid = false;
-                            random = false;
-                            break;
-                        case "initialimmune":
-                            initialImmune = Integer.parseInt(words[1]);
-                            break;
-                        case "initialsick":
-                            initialSick = Integer.parseInt(words[1]);
-                            break;
-
+                    if(line.startsWith("sweep ")) {
+                        sweeps.add(line);
+                    }
+                    else {
+                        lines.add(line);
+                        configure(line);
                     }
                 }
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
+    }
 
+    /**
+     * This method parses one line of the config text file.
+     * Lines that are not config options are ignored.
+     * @param line the line
+     */
+    public void configure(String line) {
+        //split line at spaces
+        String[] words = line.split(" ");
+        //parse line based on first word
+        switch (words[0]) {
+            case "dimensions":
+                width = Integer.parseInt(words[1]);
+                height = Integer.parseInt(words[2]);
+                break;
+            case "exposuredistance":
+                exposureDistance = Integer.parseInt(words[1]);
+                break;
+            case "incubation":
+                incubation = Integer.parseInt(words[1]);
+                break;
+            case "sickness":
+                sickness = Integer.parseInt(words[1]);
+                break;
+            case "recover":
+                recover = Double.parseDouble(words[1]);
+                break;
+            case "grid":
+                grid = true;
+                rows = Integer.parseInt(words[1]);
+                columns = Integer.parseInt(words[2]);
+                random = false;
+                randomGrid = false;
+                populationFile = null;
+                break;
+            case "random":
+                n = Integer.parseInt(words[1]);
+                break;
+            case "randomgrid":
+                rows = Integer.parseInt(words[1]);
+                columns = Integer.parseInt(words[2]);
+                n = Integer.parseInt(words[3]);
+                randomGrid = true;
+                grid = false;
+                random = false;
+                populationFile = null;
+                break;
+            case "initialimmune":
+                initialImmune = Integer.parseInt(words[1]);
+                break;
+            case "initialsick":
+                initialSick = Integer.parseInt(words[1]);
+                break;
+            case "engine":
+                virtualEngine = words[1].equals("virtual");
+                break;
+            case "execution":
+                execution = AgentExecutor.Mode.valueOf(
+                        words[1].toUpperCase());
+                break;
+            case "workers":
+                workers = Integer.parseInt(words[1]);
+                break;
+            case "graph":
+                halfGraph = words[1].equals("half");
+                break;
+            case "eventlog":
+                eventLogSize = Integer.parseInt(words[1]);
+                break;
+            case "eventspill":
+                eventSpill = words[1];
+                break;
+            case "days":
+                maxDays = Integer.parseInt(words[1]);
+                break;
+            case "checkpoint":
+                checkpoint = words[1];
+                if(words.length>2) {
+                    checkpointEvery = Integer.parseInt(words[2]);
+                }
+                break;
+            case "resume":
+                resume = words[1];
+                break;
+            case "output":
+                output = words[1];
+                binaryOutput = words.length>2 && words[2].equals("binary");
+                break;
+            case "seed":
+                seed = Long.parseLong(words[1]);
+                break;
+            case "speed":
+                speed = Double.parseDouble(words[1]);
+                break;
+            case "jmx":
+                jmx = Boolean.parseBoolean(words[1]);
+                break;
+            case "replicas":
+                replicas = Integer.parseInt(words[1]);
+                break;
+            case "contacts":
+                contactsFile = words[1];
+                break;
+            case "population":
+                //given positions are neighbors like random ones
+                populationFile = words[1];
+                populationStates = words.length>2 &&
+                        words[2].equals("states");
+                random = true;
+                grid = false;
+                randomGrid = false;
+                break;
 
-        this.display = display;
+        }
     }
 }
@@ -0,0 +1,305 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class streams the counters of each day and every agent
+ * transition to two files, prefix-days and prefix-transitions,
+ * as CSV or as binary records. Records are put in primitive
+ * batches by the simulation threads and a background thread
+ * formats and writes the batches, so no file I/O happens on
+ * a simulation thread. There is a fixed number of batches:
+ * a full batch is handed to the writer and recycled once it is
+ * written, and only if the writer is that far behind does
+ * adding a record wait for a batch to come back.
+ * At the end of each day a batch that isn't full is handed
+ * over too, if a free one is ready, so the files keep up
+ * with a slow simulation.
+ * Binary transitions are 10 bytes (agent, day, from, to as
+ * int, int, byte, byte) and binary days are 5 ints (day, sick,
+ * dead, vulnerable, immune), big endian.
+ */
+public class OutputWriter {
+    private static final int BATCHES = 4;
+    private static final int TRANSITIONS = 8192;
+    private static final int DAYS = 256;
+
+    private final boolean binary;
+    private final FileChannel transitionFile;
+    private final FileChannel dayFile;
+    private final BlockingQueue<Batch> free =
+            new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<Batch> full =
+            new ArrayBlockingQueue<>(BATCHES+1);
+    private final Thread writer;
+    //the batch records are added to, taken from free
+    private Batch current;
+    private volatile IOException failure;
+    private boolean closed = false;
+
+    /**
+     * Records waiting to be written, in primitive columns
+     */
+    private static class Batch {
+        private final int[] agents = new int[TRANSITIONS];
+        private final int[] days = new int[TRANSITIONS];
+        private final byte[] from = new byte[TRANSITIONS];
+        private final byte[] to = new byte[TRANSITIONS];
+        private int transitions = 0;
+        //day, sick, dead, vulnerable, immune for each day
+        private final int[] counts = new int[DAYS*5];
+        private int dayCount = 0;
+        //the last batch, tells the writer to stop
+        private boolean last = false;
+    }
+
+    /**
+     * Constructor for the writer, creates the files and
+     * starts the writer thread
+     * @param prefix the path the file names start with
+     * @param binary true for binary records, false for CSV
+     */
+    public OutputWriter(String prefix, boolean binary) {
+        this.binary = binary;
+        String extension = binary ? ".bin" : ".csv";
+        try {
+            transitionFile = open(prefix + "-transitions" + extension);
+            dayFile = open(prefix + "-days" + extension);
+            if(!binary) {
+                transitionFile.write(text("agent,day,from,to\n"));
+                dayFile.write(text("day,sick,dead,vulnerable,immune\n"));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for(int b=1;b<BATCHES;b++) {
+            free.add(new Batch());
+        }
+        current = new Batch();
+        writer = new Thread(this::write,"output-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Open a file for writing, replacing it
+     * @param file the path
+     * @return the channel
+     * @throws IOException
+     */
+    private static FileChannel open(String file) throws IOException {
+        return FileChannel.open(Paths.get(file),StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Return a simulation listener that streams the transitions
+     * of a simulation and its counters at the end of each day
+     * @param counters the counters of the simulation
+     * @return the listener
+     */
+    public SimulationListener listenTo(Counters counters) {
+        return new SimulationListener() {
+            @Override
+            public void transition(int agentID, int day, int from, int to) {
+                OutputWriter.this.transition(agentID,day,from,to);
+            }
+
+            @Override
+            public void dayEnded(int day) {
+                counts(counters.snapshot());
+            }
+        };
+    }
+
+    /**
+     * Add a transition record, from any thread.
+     * Records added after close are dropped.
+     * @param agentID the agent ID number
+     * @param day the day of the transition
+     * @param from the previous AgentState
+     * @param to the new AgentState
+     */
+    public synchronized void transition(int agentID, int day, int from,
+                                        int to) {
+        if(closed) {
+            return;
+        }
+        if(current.transitions==TRANSITIONS) {
+            handOver();
+        }
+        int k = current.transitions++;
+        current.agents[k] = agentID;
+        current.days[k] = day;
+        current.from[k] = (byte)from;
+        current.to[k] = (byte)to;
+    }
+
+    /**
+     * Add the counters of a day and hand the batch over
+     * if a free one is ready
+     * @param snapshot the counters at the end of the day
+     */
+    public synchronized void counts(Counters.Snapshot snapshot) {
+        if(closed) {
+            return;
+        }
+        if(current.dayCount==DAYS) {
+            handOver();
+        }
+        int k = 5*current.dayCount++;
+        current.counts[k] = snapshot.getDay();
+        for(int c=0;c<4;c++) {
+            current.counts[k+1+c] = snapshot.get(c);
+        }
+        Batch next = free.poll();
+        if(next!=null) {
+            full.add(current);
+            current = next;
+        }
+    }
+
+    /**
+     * Hand the current batch to the writer and take a free
+     * one, waiting only if all batches are being written
+     */
+    private void handOver() {
+        full.add(current);
+        try {
+            current = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current = new Batch();
+        }
+    }
+
+    /**
+     * Write the remaining records, stop the writer thread
+     * and close the files. Call once the simulation stopped.
+     */
+    public synchronized void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        current.last = true;
+        full.add(current);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            transitionFile.close();
+            dayFile.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if(failure!=null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * The writer thread: format and write full batches
+     * and give them back, until the last batch
+     */
+    private void write() {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSITIONS*10);
+        StringBuilder line = new StringBuilder();
+        while(true) {
+            Batch batch;
+            try {
+                batch = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if(failure==null) {
+                try {
+                    writeBatch(batch,buffer,line);
+                } catch (IOException e) {
+                    //keep recycling batches so the simulation goes on
+                    failure = e;
+                }
+            }
+            if(batch.last) {
+                return;
+            }
+            batch.transitions = 0;
+            batch.dayCount = 0;
+            free.add(batch);
+        }
+    }
+
+    /**
+     * Format and write the records of a batch
+     * @param batch the batch
+     * @param buffer a buffer for binary records
+     * @param line a builder for CSV lines
+     * @throws IOException
+     */
+    private void writeBatch(Batch batch, ByteBuffer buffer,
+                            StringBuilder line) throws IOException {
+        if(binary) {
+            buffer.clear();
+            for(int k=0;k<batch.transitions;k++) {
+                buffer.putInt(batch.agents[k]).putInt(batch.days[k])
+                        .put(batch.from[k]).put(batch.to[k]);
+            }
+            buffer.flip();
+            writeFully(transitionFile,buffer);
+            buffer.clear();
+            for(int k=0;k<batch.dayCount*5;k++) {
+                buffer.putInt(batch.counts[k]);
+            }
+            buffer.flip();
+            writeFully(dayFile,buffer);
+            return;
+        }
+        line.setLength(0);
+        for(int k=0;k<batch.transitions;k++) {
+            line.append(batch.agents[k]).append(',')
+                    .append(batch.days[k]).append(',')
+                    .append(AgentState.name(batch.from[k])).append(',')
+                    .append(AgentState.name(batch.to[k])).append('\n');
+        }
+        writeFully(transitionFile,text(line));
+        line.setLength(0);
+        for(int d=0;d<batch.dayCount;d++) {
+            for(int c=0;c<5;c++) {
+                line.append(batch.counts[5*d+c]).append(c<4 ? ',' : '\n');
+            }
+        }
+        writeFully(dayFile,text(line));
+    }
+
+    /**
+     * Write all of a buffer to a file
+     * @param file the file
+     * @param buffer the bytes to write
+     * @throws IOException
+     */
+    private static void writeFully(FileChannel file, ByteBuffer buffer)
+                                    throws IOException {
+        while(buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+    /**
+     * Return text as a buffer to write
+     * @param text the text
+     * @return the bytes of the text
+     */
+    private static ByteBuffer text(CharSequence text) {
+        return ByteBuffer.wrap(text.toString()
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+}
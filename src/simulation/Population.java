@@ -0,0 +1,207 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the agents of the simulation engine as
+ * columns of primitive arrays instead of agent objects.
+ * Each agent costs 13 bytes: its x and y position as floats,
+ * its AgentState as a byte and the day of its next
+ * transition as an int. Nothing here depends on JavaFX,
+ * circles are only made by the Display when it renders.
+ */
+public class Population {
+    private final int n;
+    private final float[] x;
+    private final float[] y;
+    private final byte[] state;
+    private final int[] timer;
+    //the initial AgentState of each agent, null if not given
+    private final byte[] initial;
+
+    /**
+     * Constructor for an empty population, all agents
+     * start vulnerable at position 0,0
+     * @param n the number of agents
+     */
+    public Population(int n) {
+        this.n = n;
+        x = new float[n];
+        y = new float[n];
+        state = new byte[n];
+        timer = new int[n];
+        initial = null;
+    }
+
+    /**
+     * Constructor for a population at the same positions
+     * as another one. The position columns are shared, only
+     * the states and timers are new, all agents vulnerable.
+     * The initial states are shared too.
+     * @param layout the population to take the positions of
+     */
+    public Population(Population layout) {
+        n = layout.n;
+        x = layout.x;
+        y = layout.y;
+        state = new byte[n];
+        timer = new int[n];
+        initial = layout.initial;
+    }
+
+    /**
+     * Constructor for a population at given positions, all
+     * agents vulnerable until they are given their initial states
+     * @param x the x positions
+     * @param y the y positions
+     * @param initial the initial AgentState of each agent, or null
+     */
+    public Population(float[] x, float[] y, byte[] initial) {
+        n = x.length;
+        this.x = x;
+        this.y = y;
+        state = new byte[n];
+        timer = new int[n];
+        this.initial = initial;
+    }
+
+    /**
+     * Constructor for a population from its columns, which
+     * are used as they are and not copied
+     * @param x the x positions
+     * @param y the y positions
+     * @param state the AgentState of each agent
+     * @param timer the day of each agent's next transition
+     */
+    public Population(float[] x, float[] y, byte[] state, int[] timer) {
+        n = x.length;
+        this.x = x;
+        this.y = y;
+        this.state = state;
+        this.timer = timer;
+        initial = null;
+    }
+
+    /**
+     * Return the number of agents
+     * @return n
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Set the position of an agent
+     * @param i the agent index
+     * @param px the x position
+     * @param py the y position
+     */
+    public void setPosition(int i, float px, float py) {
+        x[i] = px;
+        y[i] = py;
+    }
+
+    /**
+     * Return the x position of an agent
+     * @param i the agent index
+     * @return the x position
+     */
+    public float getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Return the y position of an agent
+     * @param i the agent index
+     * @return the y position
+     */
+    public float getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * Return the state of an agent
+     * @param i the agent index
+     * @return the AgentState
+     */
+    public byte getState(int i) {
+        return state[i];
+    }
+
+    /**
+     * Set the state of an agent
+     * @param i the agent index
+     * @param to the new AgentState
+     */
+    public void setState(int i, byte to) {
+        state[i] = to;
+    }
+
+    /**
+     * Return the day of an agent's next transition
+     * @param i the agent index
+     * @return the day
+     */
+    public int getTimer(int i) {
+        return timer[i];
+    }
+
+    /**
+     * Set the day of an agent's next transition
+     * @param i the agent index
+     * @param day the day
+     */
+    public void setTimer(int i, int day) {
+        timer[i] = day;
+    }
+
+    /**
+     * Return the x position column, for building indexes
+     * @return the x positions
+     */
+    public float[] xs() {
+        return x;
+    }
+
+    /**
+     * Return the y position column, for building indexes
+     * @return the y positions
+     */
+    public float[] ys() {
+        return y;
+    }
+
+    /**
+     * Return the state column, for checkpoints
+     * @return the AgentState of each agent
+     */
+    public byte[] states() {
+        return state;
+    }
+
+    /**
+     * Return the timer column, for checkpoints
+     * @return the day of each agent's next transition
+     */
+    public int[] timers() {
+        return timer;
+    }
+
+    /**
+     * Return the initial states of the agents, as given
+     * by a PopulationFile
+     * @return the initial AgentState of each agent, null if
+     *         the initial agents are picked from the config
+     */
+    public byte[] initialStates() {
+        return initial;
+    }
+
+    /**
+     * Make every agent vulnerable again, keeping the positions
+     */
+    public void reset() {
+        Arrays.fill(state,AgentState.VULNERABLE);
+        Arrays.fill(timer,0);
+    }
+}
@@ -0,0 +1,93 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * This class reads the agents of a population from a binary
+ * file of records, one per agent: the x and y position as
+ * big endian floats, followed by the initial AgentState as a
+ * byte if the file has states, so 8 or 9 bytes per agent.
+ * The file is split in chunks that are memory mapped and
+ * parsed in parallel straight into the columns of the
+ * Population, so no object is made per agent and a file of
+ * tens of millions of agents loads in about the time it takes
+ * to read it.
+ */
+public class PopulationFile {
+
+    /**
+     * Read a population from a file
+     * @param file the path of the file
+     * @param states whether each record ends with an initial state
+     * @param threads the number of chunks parsed at a time
+     * @return the population, all agents vulnerable, with the
+     *         initial states of the file if it has them
+     */
+    public static Population read(String file, boolean states, int threads) {
+        int record = states ? 9 : 8;
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size%record!=0 || size/record>Integer.MAX_VALUE-1) {
+                throw new IllegalArgumentException(file + " is not a file of " +
+                        record + " byte population records");
+            }
+            int n = (int)(size/record);
+            float[] x = new float[n];
+            float[] y = new float[n];
+            byte[] initial = states ? new byte[n] : null;
+
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for(int from=0;from<n;from+=ChunkedFile.CHUNK) {
+                int start = from;
+                int count = Math.min(ChunkedFile.CHUNK,n-from);
+                tasks.add(() -> {
+                    parse(channel,start,count,record,x,y,initial);
+                    return null;
+                });
+            }
+            ChunkedFile.run(file,tasks,threads);
+            return new Population(x,y,initial);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parse one chunk of records into the columns
+     * @param channel the open file
+     * @param start the first agent of the chunk
+     * @param count the number of agents in the chunk
+     * @param record the bytes per record
+     * @param x the x column to fill
+     * @param y the y column to fill
+     * @param initial the initial state column to fill, or null
+     * @throws IOException
+     */
+    private static void parse(FileChannel channel, int start, int count,
+                              int record, float[] x, float[] y,
+                              byte[] initial) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                (long)start*record,(long)count*record);
+        for(int k=0;k<count;k++) {
+            int i = start+k;
+            x[i] = buffer.getFloat();
+            y[i] = buffer.getFloat();
+            if(initial!=null) {
+                byte state = buffer.get();
+                if(state<AgentState.VULNERABLE || state>AgentState.DEAD) {
+                    throw new IllegalArgumentException("agent " + i +
+                            " has no valid state: " + state);
+                }
+                initial[i] = state;
+            }
+        }
+    }
+}
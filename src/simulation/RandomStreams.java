@@ -0,0 +1,56 @@
+package simulation;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class derives independent SplittableRandom streams
+ * from the seed of a run. Stream k of a seed only depends
+ * on the seed and k, not on which thread asks for it or
+ * when, so agent k and replica k always draw the same
+ * numbers for the same seed, however many threads run.
+ * Each agent gets its own stream instead of all threads
+ * sharing the generator behind Math.random().
+ */
+public final class RandomStreams {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private RandomStreams() {
+    }
+
+    /**
+     * Return the seed of a stream, mixed with the finalizer
+     * SplittableRandom uses so close stream numbers give
+     * unrelated seeds
+     * @param seed the seed of the run
+     * @param stream the stream number
+     * @return the seed of the stream
+     */
+    public static long derive(long seed, long stream) {
+        long z = seed + (stream+1)*GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Return the seed of run k started from a seed, like a
+     * replica of an ensemble or a restart. Runs use other
+     * seeds than the agent streams of the same seed.
+     * @param seed the seed
+     * @param k the run number
+     * @return the seed of the run
+     */
+    public static long run(long seed, long k) {
+        return derive(~seed,k);
+    }
+
+    /**
+     * Return a new generator for a stream
+     * @param seed the seed of the run
+     * @param stream the stream number, e.g. an agent ID
+     * @return the generator, at the start of the stream
+     */
+    public static SplittableRandom stream(long seed, long stream) {
+        return new SplittableRandom(derive(seed,stream));
+    }
+}
@@ -0,0 +1,604 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * This class is the headless simulation engine.
+ * It keeps the agents in a Population of primitive
+ * columns and advances a
+ * virtual day clock, so a day takes as long as the
+ * CPU needs to process it instead of one second.
+ * The engine has no JavaFX dependency, the Display
+ * only observes it through a SimulationListener.
+ * Only the exposed and sick agents are visited, they wait
+ * for their next transition in a TimerWheel and each day
+ * only the agents due that day are handled, so a day costs
+ * as much as the outbreak is large and the vulnerable,
+ * immune and dead agents cost nothing.
+ * All randomness comes from the seed: placement and the
+ * initial agents use one stream, and whether agent i dies
+ * is the first number of its own RandomStreams stream i.
+ */
+public class Simulation {
+    private final Main config;
+    private long seed;
+    //placement and seeding, not used once the days run
+    private SplittableRandom random;
+    //set when the placement is shared with or reset from another
+    //run, so placing the agents did not pick the initial ones
+    private boolean reused = false;
+    //the engine moves agents on one thread, so one stripe
+    private final Counters counters = new Counters(1);
+    private final List<SimulationListener> listeners = new ArrayList<>();
+
+    private int n;
+    private Population population;
+    private ContactGraph contacts;
+    //agents that got sick today and still have to expose
+    //their neighbors, flushed at the end of the day
+    private int[] spreading;
+    private int spreadingCount = 0;
+    //the spreading agents of a half graph, only their bits are
+    //set and they are cleared again after each walk
+    private BitSet marked;
+
+    private int day = 0;
+    //the exposed and sick agents, by the day of their transition
+    private TimerWheel wheel;
+
+    /**
+     * Constructor for the simulation, places the agents
+     * and builds their neighbors according to the config.
+     * Call seed() to set the initial sick and immune agents.
+     * @param config the parsed config file
+     */
+    public Simulation(Main config) {
+        this(config,config.getSeed());
+    }
+
+    /**
+     * Constructor for the simulation with its own seed
+     * instead of the one of the config
+     * @param config the parsed config file
+     * @param seed the seed of all random numbers of the run
+     */
+    public Simulation(Main config, long seed) {
+        this.config = config;
+        this.seed = seed;
+        random = new SplittableRandom(seed);
+        SimulationEvents.Placement placed = SimulationEvents.recording()
+                ? new SimulationEvents.Placement() : null;
+        SimulationEvents.begin(placed);
+        if(config.getPopulationFile()!=null) {
+            placeFile();
+        }
+        else if(config.isGrid()) {
+            placeGrid();
+        }
+        else if(config.isRandomGrid()) {
+            placeRandomGrid();
+        }
+        else {
+            placeRandom();
+        }
+        if(SimulationEvents.end(placed)) {
+            placed.layout = SimulationEvents.layout(config);
+            placed.agents = n;
+            placed.commit();
+        }
+        buildNeighbors(!config.isRandom());
+        spreading = new int[n];
+        wheel = new TimerWheel(Math.max(config.getIncubation(),
+                                        config.getSickness()));
+        counters.reset(n);
+    }
+
+    /**
+     * Constructor for a simulation on given agent positions
+     * and contact graph, which are shared and not copied.
+     * Call seed() to set the initial sick and immune agents.
+     * @param config the parsed config file
+     * @param layout the population to share the positions of
+     * @param contacts the contact graph of those positions
+     * @param seed the seed of all random numbers of the run
+     */
+    public Simulation(Main config, Population layout, ContactGraph contacts,
+                      long seed) {
+        this.config = config;
+        this.seed = seed;
+        random = new SplittableRandom(seed);
+        n = layout.size();
+        population = new Population(layout);
+        this.contacts = contacts;
+        //each run on the shared placement picks its own initial agents
+        reused = true;
+        spreading = new int[n];
+        wheel = new TimerWheel(Math.max(config.getIncubation(),
+                                        config.getSickness()));
+        counters.reset(n);
+    }
+
+    /**
+     * Constructor for a simulation resumed from a Checkpoint,
+     * between two days. All state is used as it is.
+     * @param config the parsed config file
+     * @param population the agents, with their states and timers
+     * @param contacts the contact graph of the agents
+     * @param seed the seed of the run
+     * @param saved the counters and the day to continue from
+     */
+    Simulation(Main config, Population population, ContactGraph contacts,
+               long seed, Counters.Snapshot saved) {
+        this.config = config;
+        this.seed = seed;
+        random = new SplittableRandom(seed);
+        this.population = population;
+        this.contacts = contacts;
+        n = population.size();
+        spreading = new int[n];
+        counters.restore(saved);
+        day = saved.getDay();
+        //timers set with another config may be further ahead
+        int maxDelay = Math.max(config.getIncubation(),config.getSickness());
+        for(int i=0;i<n;i++) {
+            byte state = population.getState(i);
+            if(state==AgentState.EXPOSED || state==AgentState.SICK) {
+                maxDelay = Math.max(maxDelay,population.getTimer(i)-day);
+            }
+        }
+        wheel = new TimerWheel(maxDelay);
+        for(int i=0;i<n;i++) {
+            byte state = population.getState(i);
+            if(state==AgentState.EXPOSED || state==AgentState.SICK) {
+                wheel.schedule(i,population.getTimer(i));
+            }
+        }
+    }
+
+    /**
+     * Add an observer to the simulation
+     * @param listener the listener to add
+     */
+    public void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Place n agents at random positions within the dimensions
+     */
+    private void placeRandom() {
+        n = config.getN();
+        population = new Population(n);
+        for(int i=0;i<n;i++) {
+            population.setPosition(i,
+                    random.nextInt(config.getWidth()-5)+5,
+                    random.nextInt(config.getHeight()-5)+5);
+        }
+    }
+
+    /**
+     * Read the agents and their positions from a PopulationFile,
+     * in parallel on as many threads as there are workers
+     */
+    private void placeFile() {
+        population = PopulationFile.read(config.getPopulationFile(),
+                        config.isPopulationStates(),config.getWorkers());
+        n = population.size();
+    }
+
+    /**
+     * Place one agent in each cell of a rows*columns grid
+     * with exposuredistance between adjacent cells
+     */
+    private void placeGrid() {
+        int rows = config.getRows();
+        int columns = config.getColumns();
+        int distance = config.getExposureDistance();
+        n = rows*columns;
+        population = new Population(n);
+        for(int i=0;i<rows;i++) {
+            for(int j=0;j<columns;j++) {
+                population.setPosition(i*columns+j,
+                        i*distance + distance/2,
+                        j*distance + distance/2);
+            }
+        }
+    }
+
+    /**
+     * Place n agents in random distinct cells of a
+     * rows*columns grid. No agents are placed if n
+     * is larger than the number of cells.
+     */
+    private void placeRandomGrid() {
+        int rows = config.getRows();
+        int columns = config.getColumns();
+        int cellWidth = config.getWidth()/columns;
+        int cellHeight = config.getHeight()/rows;
+        n = config.getN()<=rows*columns ? config.getN() : 0;
+        population = new Population(n);
+        HashSet<Integer> cells = new HashSet<>();
+        for(int i=0;i<n;i++) {
+            int row = random.nextInt(rows);
+            int col = random.nextInt(columns);
+            while(!cells.add(row*columns+col)) {
+                row = random.nextInt(rows);
+                col = random.nextInt(columns);
+            }
+            population.setPosition(i,col*cellWidth + cellWidth/2,
+                                    row*cellHeight + cellHeight/2);
+        }
+    }
+
+    /**
+     * Figure out each agent's neighbors based on
+     * distance and exposuredistance, using a SpatialIndex
+     * so only agents in adjacent cells are compared,
+     * or read them from a ContactFile if there is one
+     * @param inclusive whether agents exactly exposuredistance
+     *                  apart are neighbors
+     */
+    private void buildNeighbors(boolean inclusive) {
+        SimulationEvents.Neighbors built = SimulationEvents.recording()
+                ? new SimulationEvents.Neighbors() : null;
+        SimulationEvents.begin(built);
+        if(config.getContactsFile()!=null) {
+            contacts = ContactFile.read(config.getContactsFile(),n,
+                        config.isHalfGraph(),config.getWorkers());
+        }
+        else {
+            double exposureDistance = config.getExposureDistance();
+            SpatialIndex index = new SpatialIndex(population.xs(),
+                                                population.ys(),n,
+                                                exposureDistance);
+            contacts = ContactGraph.build(index,n,exposureDistance,
+                                            inclusive,config.isHalfGraph());
+        }
+        if(SimulationEvents.end(built)) {
+            built.source = SimulationEvents.source(config);
+            built.agents = n;
+            built.edges = contacts.edgeCount();
+            built.commit();
+        }
+    }
+
+    /**
+     * Set the initial immune and sick agents. A population file
+     * with states gives them for every agent. For the grid option,
+     * a population file without states and a shared or reset
+     * placement they are picked at random, for the other options
+     * the placement is already random so the first agents are used.
+     * Listeners added before this call see the initial transitions.
+     */
+    public void seed() {
+        seedStates();
+        exposeNeighbors();
+    }
+
+    /**
+     * Set the initial states of seed() without exposing the
+     * neighbors of the sick agents yet, package-private so the
+     * benchmarks can time the exposure on its own
+     */
+    void seedStates() {
+        int initialSick = Math.min(config.getInitialSick(),n);
+        int initialImmune = Math.min(config.getInitialImmune(),n-initialSick);
+        byte[] initial = population.initialStates();
+        if(initial!=null) {
+            for(int i=0;i<n;i++) {
+                switch (initial[i]) {
+                    case AgentState.EXPOSED:
+                        expose(i);
+                        break;
+                    case AgentState.SICK:
+                        becomeSick(i);
+                        break;
+                    case AgentState.IMMUNE:
+                        becomeImmune(i);
+                        break;
+                    case AgentState.DEAD:
+                        setState(i,AgentState.DEAD);
+                        counters.move(Counters.VULNERABLE,Counters.DEAD);
+                        break;
+                }
+            }
+        }
+        else if(config.isGrid() || config.getPopulationFile()!=null ||
+                reused) {
+            HashSet<Integer> picked = new HashSet<>();
+            for(int i=0;i<initialSick+initialImmune;i++) {
+                int index = random.nextInt(n);
+                while(!picked.add(index)) {
+                    index = random.nextInt(n);
+                }
+                if(i<initialSick) {
+                    becomeSick(index);
+                }
+                else {
+                    becomeImmune(index);
+                }
+            }
+        }
+        else {
+            for(int i=0;i<initialImmune;i++) {
+                becomeImmune(i);
+            }
+            for(int i=initialImmune;i<initialImmune+initialSick;i++) {
+                becomeSick(i);
+            }
+        }
+    }
+
+    /**
+     * Start another run on the same agents and contact graph.
+     * Every agent is made vulnerable again in place and the
+     * day goes back to 0, nothing is allocated.
+     * Call seed() to set the initial sick and immune agents.
+     * @param seed the seed of the new run
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        random = new SplittableRandom(seed);
+        reused = true;
+        population.reset();
+        counters.reset(n);
+        wheel.reset();
+        spreadingCount = 0;
+        day = 0;
+    }
+
+    /**
+     * Advance the simulation by one day. Applies the
+     * transitions of the agents due today in the TimerWheel,
+     * notifies the listeners and moves the day counter on.
+     */
+    public void step() {
+        SimulationEvents.DayStep stepped = SimulationEvents.recording()
+                ? new SimulationEvents.DayStep() : null;
+        SimulationEvents.begin(stepped);
+        int[] due = wheel.due(day);
+        int count = wheel.count(day);
+        for(int k=0;k<count;k++) {
+            int i = due[k];
+            if(population.getState(i)==AgentState.EXPOSED) {
+                becomeSick(i);
+            }
+            //decide whether agent dies or recovers
+            else if(RandomStreams.stream(seed,i).nextDouble()>
+                    config.getRecover()) {
+                setState(i,AgentState.DEAD);
+                counters.move(Counters.SICK,Counters.DEAD);
+            }
+            else {
+                setState(i,AgentState.IMMUNE);
+                counters.move(Counters.SICK,Counters.IMMUNE);
+            }
+        }
+        wheel.clear(day);
+        exposeNeighbors();
+        for(SimulationListener listener:listeners) {
+            listener.dayEnded(day);
+        }
+        if(SimulationEvents.end(stepped)) {
+            stepped.day = day;
+            stepped.agents = n;
+            stepped.transitions = count;
+            stepped.frontier = wheel.size();
+            stepped.commit();
+        }
+        day++;
+        counters.incrementDays();
+    }
+
+    /**
+     * Run the simulation until there are no exposed or
+     * sick agents left, or until maxDays days have passed
+     * @param maxDays the day limit, 0 for no limit
+     */
+    public void run(int maxDays) {
+        while(!isFinished() && (maxDays<=0 || day<maxDays)) {
+            step();
+        }
+    }
+
+    /**
+     * Turn an agent sick, its neighbors are exposed
+     * at the end of the day
+     * @param i the agent index
+     */
+    private void becomeSick(int i) {
+        setState(i,AgentState.SICK);
+        //a transition always lands on a later day
+        population.setTimer(i,day+Math.max(1,config.getSickness()));
+        wheel.schedule(i,population.getTimer(i));
+        counters.move(Counters.VULNERABLE,Counters.SICK);
+        spreading[spreadingCount++] = i;
+    }
+
+    /**
+     * Expose the vulnerable neighbors of the agents that got
+     * sick today. A full graph is scanned per sick agent, a
+     * half graph stores each edge under the lower agent only,
+     * so the edges of the agents up to the highest sick one
+     * are walked once with the sick agents marked.
+     */
+    void exposeNeighbors() {
+        SimulationEvents.Exposure exposure = SimulationEvents.recording()
+                ? new SimulationEvents.Exposure() : null;
+        SimulationEvents.begin(exposure);
+        //only exposures are scheduled while the neighbors are walked
+        int waiting = wheel.size();
+        int[] offsets = contacts.getOffsets();
+        int[] targets = contacts.getTargets();
+        if(!contacts.isHalf()) {
+            for(int k=0;k<spreadingCount;k++) {
+                int i = spreading[k];
+                for(int e=offsets[i];e<offsets[i+1];e++) {
+                    expose(targets[e]);
+                }
+            }
+        }
+        else if(spreadingCount>0) {
+            if(marked==null) {
+                marked = new BitSet(n);
+            }
+            int last = 0;
+            for(int k=0;k<spreadingCount;k++) {
+                marked.set(spreading[k]);
+                last = Math.max(last,spreading[k]);
+            }
+            //edges to a sick agent are stored under lower agents
+            for(int i=0;i<=last;i++) {
+                boolean sick = marked.get(i);
+                for(int e=offsets[i];e<offsets[i+1];e++) {
+                    if(sick) {
+                        expose(targets[e]);
+                    }
+                    else if(marked.get(targets[e])) {
+                        expose(i);
+                    }
+                }
+            }
+            for(int k=0;k<spreadingCount;k++) {
+                marked.clear(spreading[k]);
+            }
+        }
+        if(SimulationEvents.end(exposure)) {
+            exposure.day = day;
+            exposure.spreading = spreadingCount;
+            exposure.exposed = wheel.size()-waiting;
+            exposure.commit();
+        }
+        spreadingCount = 0;
+    }
+
+    /**
+     * Expose an agent if it is still vulnerable
+     * @param i the agent index
+     */
+    private void expose(int i) {
+        if(population.getState(i)==AgentState.VULNERABLE) {
+            setState(i,AgentState.EXPOSED);
+            population.setTimer(i,day+Math.max(1,config.getIncubation()));
+            wheel.schedule(i,population.getTimer(i));
+        }
+    }
+
+    /**
+     * Turn a vulnerable agent immune at the start of the simulation
+     * @param i the agent index
+     */
+    private void becomeImmune(int i) {
+        setState(i,AgentState.IMMUNE);
+        counters.move(Counters.VULNERABLE,Counters.IMMUNE);
+    }
+
+    /**
+     * Change an agent's state and notify the listeners
+     * @param i the agent index
+     * @param to the new state
+     */
+    private void setState(int i,byte to) {
+        byte from = population.getState(i);
+        population.setState(i,to);
+        for(SimulationListener listener:listeners) {
+            listener.transition(i,day,from,to);
+        }
+    }
+
+    /**
+     * Return whether the outbreak is over
+     * @return true if no agent is exposed or sick
+     */
+    public boolean isFinished() {
+        return wheel.size()==0;
+    }
+
+    /**
+     * Return the number of exposed and sick agents,
+     * which are all that a day visits
+     * @return the number of agents in the TimerWheel
+     */
+    public int getFrontierSize() {
+        return wheel.size();
+    }
+
+    /**
+     * Return the number of agents
+     * @return n
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Return the current day
+     * @return day
+     */
+    public int getDay() {
+        return day;
+    }
+
+    /**
+     * Return the x position of an agent
+     * @param i the agent index
+     * @return the x position
+     */
+    public float getX(int i) {
+        return population.getX(i);
+    }
+
+    /**
+     * Return the y position of an agent
+     * @param i the agent index
+     * @return the y position
+     */
+    public float getY(int i) {
+        return population.getY(i);
+    }
+
+    /**
+     * Return the state of an agent
+     * @param i the agent index
+     * @return the AgentState of the agent
+     */
+    public byte getState(int i) {
+        return population.getState(i);
+    }
+
+    /**
+     * Return the contact graph of the simulation
+     * @return contacts
+     */
+    public ContactGraph getContacts() {
+        return contacts;
+    }
+
+    /**
+     * Return the seed of all random numbers of the run
+     * @return seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Return the counters of this simulation
+     * @return counters
+     */
+    public Counters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Return the agent store of the simulation
+     * @return population
+     */
+    public Population getPopulation() {
+        return population;
+    }
+}
@@ -0,0 +1,195 @@
+package simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class holds the Java Flight Recorder events of the
+ * simulation phases, so a recording shows where the time of
+ * a run goes: placing the agents, building their neighbors,
+ * each day step and its exposures, updating the counters and
+ * plot, and drawing a frame. The duration of an event is the
+ * duration of its phase.
+ * Every phase is timed with begin and end and only filled in
+ * and committed if shouldCommit() says the event is recorded.
+ * Loading the first event class takes about 0.4s, so until
+ * the Flight Recorder is started no event is created at all
+ * and a phase costs one check.
+ * Record with java -XX:StartFlightRecording:filename=run.jfr ...
+ */
+public final class SimulationEvents {
+
+    private SimulationEvents() {
+    }
+
+    /**
+     * Return whether the Flight Recorder was started, by
+     * -XX:StartFlightRecording or later with jcmd, so events
+     * of the phases are worth creating
+     * @return recording
+     */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Begin timing a phase
+     * @param event the event of the phase, null when not recording
+     */
+    static void begin(Event event) {
+        if(event!=null) {
+            event.begin();
+        }
+    }
+
+    /**
+     * End timing a phase
+     * @param event the event of the phase, null when not recording
+     * @return whether the event should be filled in and committed
+     */
+    static boolean end(Event event) {
+        if(event==null) {
+            return false;
+        }
+        event.end();
+        return event.shouldCommit();
+    }
+
+    /**
+     * Return the name of the placement a config uses
+     * @param config the parsed config file
+     * @return population, grid, randomgrid or random
+     */
+    static String layout(Main config) {
+        if(config.getPopulationFile()!=null) {
+            return "population";
+        }
+        if(config.isGrid()) {
+            return "grid";
+        }
+        return config.isRandomGrid() ? "randomgrid" : "random";
+    }
+
+    /**
+     * Return where the neighbors of a config come from
+     * @param config the parsed config file
+     * @return the contact file, or distance
+     */
+    static String source(Main config) {
+        return config.getContactsFile()!=null ? config.getContactsFile()
+                                              : "distance";
+    }
+
+    /**
+     * Placing the agents of a run
+     */
+    @Name("simulation.Placement")
+    @Label("Placement")
+    @Category("Simulation")
+    @Description("Placing the agents of a run")
+    public static class Placement extends Event {
+        @Label("Layout")
+        public String layout;
+
+        @Label("Agents")
+        public int agents;
+    }
+
+    /**
+     * Building the contact graph of the agents
+     */
+    @Name("simulation.Neighbors")
+    @Label("Neighbor Build")
+    @Category("Simulation")
+    @Description("Building the contact graph of the agents")
+    public static class Neighbors extends Event {
+        @Label("Source")
+        @Description("distance or the contact file")
+        public String source;
+
+        @Label("Agents")
+        public int agents;
+
+        @Label("Edges")
+        @Description("Stored edges, half of the contacts in a half graph")
+        public int edges;
+    }
+
+    /**
+     * One day of the engine, including its exposures
+     */
+    @Name("simulation.DayStep")
+    @Label("Day Step")
+    @Category("Simulation")
+    @Description("One day of the engine, including its exposures")
+    public static class DayStep extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Agents")
+        public int agents;
+
+        @Label("Transitions")
+        @Description("Agents that were due for a transition")
+        public int transitions;
+
+        @Label("Frontier")
+        @Description("Exposed and sick agents after the day")
+        public int frontier;
+    }
+
+    /**
+     * Exposing the neighbors of the agents that got sick
+     */
+    @Name("simulation.Exposure")
+    @Label("Exposure Fan-out")
+    @Category("Simulation")
+    @Description("Exposing the neighbors of the agents that got sick")
+    public static class Exposure extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Spreading")
+        @Description("Agents that got sick and exposed their neighbors")
+        public int spreading;
+
+        @Label("Exposed")
+        @Description("Agents that became exposed")
+        public int exposed;
+    }
+
+    /**
+     * Recording the counters of a day and updating the plot
+     */
+    @Name("simulation.UpdateCounters")
+    @Label("Update Counters")
+    @Category("Simulation")
+    @Description("Recording the counters of a day and updating the plot")
+    public static class UpdateCounters extends Event {
+        @Label("Day")
+        public int day;
+
+        @Label("Agents")
+        public int agents;
+    }
+
+    /**
+     * Drawing the changed agents in one frame
+     */
+    @Name("simulation.RenderFrame")
+    @Label("Render Frame")
+    @Category("Simulation")
+    @Description("Drawing the changed agents in one frame")
+    public static class RenderFrame extends Event {
+        @Label("Drawn")
+        @Description("Agents drawn in the frame")
+        public int drawn;
+
+        @Label("Agents")
+        public int agents;
+    }
+}
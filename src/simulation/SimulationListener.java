@@ -0,0 +1,26 @@
+package simulation;
+
+/**
+ * Observer of a running Simulation.
+ * The engine calls these methods on the thread that
+ * steps it, so implementations that touch the GUI
+ * have to hand the work over to the JavaFX thread.
+ */
+public interface SimulationListener {
+
+    /**
+     * Called when an agent changes state
+     * @param agentID the agent ID number
+     * @param day the day the change happened on
+     * @param from the previous AgentState
+     * @param to the new AgentState
+     */
+    void transition(int agentID, int day, int from, int to);
+
+    /**
+     * Called after all the transitions of a day
+     * have been applied, before the day counter moves on
+     * @param day the day that ended
+     */
+    void dayEnded(int day);
+}
@@ -0,0 +1,273 @@
+package simulation;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class exposes a running simulation as an MBean under
+ * simulation:type=Simulation,name=..., so a run can be watched
+ * and controlled with jconsole or any other JMX client.
+ * Registering starts the platform MBean server, so runs only
+ * register when the config asks for it; the pacing works
+ * either way.
+ * It reads the Counters of the run, times each day that is
+ * stepped through it and keeps the latencies of the last
+ * LATENCIES days for the percentiles. The loop that steps
+ * the run asks it whether to pause and how fast to go.
+ */
+public class SimulationMonitor implements SimulationMonitorMBean {
+    private static final int LATENCIES = 1024;
+    //numbers the MBeans of a JVM
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    private final ObjectName name;
+    //agents waiting to be drawn, 0 without a GUI
+    private final IntSupplier backlog;
+    //the engine, null when the agents run on threads
+    private volatile Simulation simulation;
+    private volatile Counters counters = new Counters();
+
+    private final long[] latencies = new long[LATENCIES];
+    private long steps = 0;
+    private long agentDays = 0;
+    private long stepNanos = 0;
+    private long lastStep = 0;
+
+    private boolean paused = false;
+    private double speed;
+
+    /**
+     * Constructor for the monitor, call register to make it visible
+     * @param kind what runs the simulation, part of the MBean name
+     * @param backlog returns the number of agents waiting to be drawn
+     * @param speed the target speed in days per second,
+     *              0 for as fast as possible
+     */
+    public SimulationMonitor(String kind, IntSupplier backlog, double speed) {
+        this.backlog = backlog;
+        this.speed = speed;
+        try {
+            name = new ObjectName("simulation:type=Simulation,name=" +
+                    kind + "-" + RUNS.incrementAndGet());
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Register the MBean with the platform MBean server
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(!server.isRegistered(name)) {
+                server.registerMBean(this,name);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Remove the MBean from the platform MBean server
+     */
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Watch an engine run, starting the statistics over
+     * @param simulation the simulation
+     */
+    public void watch(Simulation simulation) {
+        this.simulation = simulation;
+        watch(simulation.getCounters());
+    }
+
+    /**
+     * Watch a run of agent threads through their counters,
+     * starting the statistics over
+     * @param counters the counters the agents move in
+     */
+    public synchronized void watch(Counters counters) {
+        this.counters = counters;
+        steps = 0;
+        agentDays = 0;
+        stepNanos = 0;
+    }
+
+    /**
+     * Step the watched engine by one day and record how long it took
+     */
+    public void step() {
+        Simulation current = simulation;
+        long start = System.nanoTime();
+        current.step();
+        stepped(System.nanoTime()-start,current.size());
+    }
+
+    /**
+     * Record a day that was stepped
+     * @param nanos how long the day took
+     * @param agents the number of agents that were stepped
+     */
+    public synchronized void stepped(long nanos, int agents) {
+        latencies[(int)(steps%LATENCIES)] = nanos;
+        steps++;
+        agentDays += agents;
+        stepNanos += nanos;
+        lastStep = System.nanoTime();
+    }
+
+    /**
+     * Wait until the next day may be stepped: while paused,
+     * and with a target speed until 1/speed seconds have
+     * passed since the last day
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public synchronized void awaitTurn() throws InterruptedException {
+        while(true) {
+            if(paused) {
+                wait();
+                continue;
+            }
+            if(speed<=0 || steps==0) {
+                return;
+            }
+            long due = lastStep + (long)(1e9/speed);
+            long left = due-System.nanoTime();
+            if(left<=0) {
+                return;
+            }
+            wait(Math.max(1,left/1_000_000));
+        }
+    }
+
+    @Override
+    public int getDay() {
+        return counters.getDays();
+    }
+
+    @Override
+    public int getAgents() {
+        int[] counts = getCounts();
+        return counts[0]+counts[1]+counts[2]+counts[3];
+    }
+
+    @Override
+    public int getSick() {
+        return counters.snapshot().getSick();
+    }
+
+    @Override
+    public int getDead() {
+        return counters.snapshot().getDead();
+    }
+
+    @Override
+    public int getVulnerable() {
+        return counters.snapshot().getVulnerable();
+    }
+
+    @Override
+    public int getImmune() {
+        return counters.snapshot().getImmune();
+    }
+
+    @Override
+    public int[] getCounts() {
+        Counters.Snapshot snapshot = counters.snapshot();
+        return new int[] {snapshot.getSick(), snapshot.getDead(),
+                          snapshot.getVulnerable(), snapshot.getImmune()};
+    }
+
+    @Override
+    public synchronized double getAgentDaysPerSecond() {
+        return stepNanos==0 ? 0 : agentDays/(stepNanos/1e9);
+    }
+
+    @Override
+    public double getStepLatencyP50() {
+        return latency(0.5);
+    }
+
+    @Override
+    public double getStepLatencyP90() {
+        return latency(0.9);
+    }
+
+    @Override
+    public double getStepLatencyP99() {
+        return latency(0.99);
+    }
+
+    /**
+     * Return a percentile of the recent step latencies
+     * @param p the percentile, between 0 and 1
+     * @return milliseconds, 0 if no day was stepped
+     */
+    private synchronized double latency(double p) {
+        int count = (int)Math.min(steps,LATENCIES);
+        if(count==0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies,count);
+        Arrays.sort(sorted);
+        return sorted[(int)Math.ceil(p*count)-1]/1e6;
+    }
+
+    @Override
+    public int getFrontierSize() {
+        Simulation current = simulation;
+        return current==null ? -1 : current.getFrontierSize();
+    }
+
+    @Override
+    public int getUiBacklog() {
+        return backlog.getAsInt();
+    }
+
+    @Override
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public synchronized double getTargetSpeed() {
+        return speed;
+    }
+
+    @Override
+    public synchronized void setTargetSpeed(double daysPerSecond) {
+        speed = Math.max(0,daysPerSecond);
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void pause() {
+        if(simulation==null) {
+            //agent threads sleep through their days in real time
+            throw new UnsupportedOperationException(
+                    "agents on their own threads can't be paused");
+        }
+        paused = true;
+    }
+
+    @Override
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+}
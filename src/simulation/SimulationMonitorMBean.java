@@ -0,0 +1,122 @@
+package simulation;
+
+/**
+ * This interface is the JMX management interface of a running
+ * simulation, see SimulationMonitor. Latencies are in
+ * milliseconds, speeds in days per second.
+ */
+public interface SimulationMonitorMBean {
+
+    /**
+     * Return the current day
+     * @return day
+     */
+    int getDay();
+
+    /**
+     * Return the number of agents
+     * @return agents
+     */
+    int getAgents();
+
+    /**
+     * Return the number of sick agents
+     * @return sick
+     */
+    int getSick();
+
+    /**
+     * Return the number of dead agents
+     * @return dead
+     */
+    int getDead();
+
+    /**
+     * Return the number of vulnerable agents
+     * @return vulnerable
+     */
+    int getVulnerable();
+
+    /**
+     * Return the number of immune agents
+     * @return immune
+     */
+    int getImmune();
+
+    /**
+     * Return sick, dead, vulnerable and immune from one snapshot,
+     * so they always add up to the number of agents
+     * @return the four counts
+     */
+    int[] getCounts();
+
+    /**
+     * Return how many agent-days were simulated per second
+     * of stepping
+     * @return agent-days per second
+     */
+    double getAgentDaysPerSecond();
+
+    /**
+     * Return the median step latency of the recent days
+     * @return milliseconds
+     */
+    double getStepLatencyP50();
+
+    /**
+     * Return the 90th percentile step latency of the recent days
+     * @return milliseconds
+     */
+    double getStepLatencyP90();
+
+    /**
+     * Return the 99th percentile step latency of the recent days
+     * @return milliseconds
+     */
+    double getStepLatencyP99();
+
+    /**
+     * Return the number of exposed and sick agents waiting
+     * for a transition
+     * @return frontier size, -1 if the agents run on threads
+     */
+    int getFrontierSize();
+
+    /**
+     * Return the number of agents waiting to be redrawn
+     * @return backlog, 0 without a GUI
+     */
+    int getUiBacklog();
+
+    /**
+     * Return whether stepping is paused
+     * @return paused
+     */
+    boolean isPaused();
+
+    /**
+     * Return the target speed
+     * @return days per second, 0 for as fast as possible
+     */
+    double getTargetSpeed();
+
+    /**
+     * Set the target speed
+     * @param daysPerSecond days per second, 0 for as fast as possible
+     */
+    void setTargetSpeed(double daysPerSecond);
+
+    /**
+     * Stop stepping after the current day. Only runs of the
+     * engine can be paused, agents on their own threads would
+     * go on sleeping and infecting in real time.
+     * @throws UnsupportedOperationException if the agents run
+     *                                       on threads
+     */
+    void pause();
+
+    /**
+     * Go on stepping
+     */
+    void resume();
+}
@@ -0,0 +1,170 @@
+package simulation;
+
+/**
+ * This class is a uniform grid of square cells over the
+ * agent positions, used to find the neighbors of the agents
+ * without comparing every pair. With cells at least as wide
+ * as the exposure distance, an agent's neighbors can only be
+ * in its own cell or one of the 8 cells around it.
+ * Agents are counting sorted by cell into two int arrays.
+ */
+public class SpatialIndex {
+
+    /**
+     * Callback for a pair of neighboring agents
+     */
+    public interface PairVisitor {
+        /**
+         * Called once for each unordered pair of neighbors
+         * @param i the lower agent index
+         * @param j the higher agent index
+         */
+        void visit(int i, int j);
+    }
+
+    private final float[] x;
+    private final float[] y;
+    private final double cellSize;
+    private final double minX;
+    private final double minY;
+    private final int columns;
+    private final int rows;
+    //cellStart[c] to cellStart[c+1] are the agents of cell c
+    private final int[] cellStart;
+    private final int[] cellAgents;
+
+    /**
+     * Constructor for the index, sorts the agents into cells
+     * @param x the x positions of the agents
+     * @param y the y positions of the agents
+     * @param n the number of agents
+     * @param distance the exposure distance, used as cell size
+     */
+    public SpatialIndex(float[] x, float[] y, int n, double distance) {
+        this.x = x;
+        this.y = y;
+        double lowX = Double.MAX_VALUE;
+        double lowY = Double.MAX_VALUE;
+        double highX = -Double.MAX_VALUE;
+        double highY = -Double.MAX_VALUE;
+        for(int i=0;i<n;i++) {
+            lowX = Math.min(lowX,x[i]);
+            lowY = Math.min(lowY,y[i]);
+            highX = Math.max(highX,x[i]);
+            highY = Math.max(highY,y[i]);
+        }
+        if(n==0) {
+            lowX = lowY = highX = highY = 0;
+        }
+        minX = lowX;
+        minY = lowY;
+        //grow the cells if there would be many more cells than agents
+        double size = Math.max(distance,1);
+        long maxCells = 4L*n+16;
+        while(((long)((highX-lowX)/size)+1)*((long)((highY-lowY)/size)+1)
+                > maxCells) {
+            size *= 2;
+        }
+        cellSize = size;
+        columns = (int)((highX-lowX)/size)+1;
+        rows = (int)((highY-lowY)/size)+1;
+
+        //counting sort of the agents by cell
+        cellStart = new int[columns*rows+1];
+        cellAgents = new int[n];
+        int[] cells = new int[n];
+        for(int i=0;i<n;i++) {
+            cells[i] = cellOf(x[i],y[i]);
+            cellStart[cells[i]+1]++;
+        }
+        for(int c=0;c<columns*rows;c++) {
+            cellStart[c+1] += cellStart[c];
+        }
+        int[] next = new int[columns*rows];
+        for(int c=0;c<columns*rows;c++) {
+            next[c] = cellStart[c];
+        }
+        for(int i=0;i<n;i++) {
+            cellAgents[next[cells[i]]++] = i;
+        }
+    }
+
+    /**
+     * Return the cell an agent position falls in
+     * @param px the x position
+     * @param py the y position
+     * @return the cell index
+     */
+    private int cellOf(double px, double py) {
+        int column = (int)((px-minX)/cellSize);
+        int row = (int)((py-minY)/cellSize);
+        return row*columns+column;
+    }
+
+    /**
+     * Visit every pair of agents closer than distance,
+     * only comparing agents in the same or adjacent cells.
+     * Distances are compared squared so no square root is taken.
+     * @param distance the exposure distance, at most the cell size
+     * @param inclusive whether agents exactly distance apart
+     *                  are neighbors
+     * @param visitor the callback for each pair
+     */
+    public void forEachPair(double distance, boolean inclusive,
+                            PairVisitor visitor) {
+        double limit = distance*distance;
+        for(int row=0;row<rows;row++) {
+            for(int column=0;column<columns;column++) {
+                int cell = row*columns+column;
+                //pairs inside the cell
+                for(int a=cellStart[cell];a<cellStart[cell+1];a++) {
+                    for(int b=a+1;b<cellStart[cell+1];b++) {
+                        check(cellAgents[a],cellAgents[b],limit,
+                                inclusive,visitor);
+                    }
+                }
+                //pairs with the cells to the right and below, so
+                //each pair of adjacent cells is only looked at once
+                if(column+1<columns) {
+                    visitCells(cell,cell+1,limit,inclusive,visitor);
+                }
+                if(row+1<rows) {
+                    if(column>0) {
+                        visitCells(cell,cell+columns-1,limit,inclusive,
+                                visitor);
+                    }
+                    visitCells(cell,cell+columns,limit,inclusive,visitor);
+                    if(column+1<columns) {
+                        visitCells(cell,cell+columns+1,limit,inclusive,
+                                visitor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare every agent of one cell with every agent of another
+     */
+    private void visitCells(int cell, int other, double limit,
+                            boolean inclusive, PairVisitor visitor) {
+        for(int a=cellStart[cell];a<cellStart[cell+1];a++) {
+            for(int b=cellStart[other];b<cellStart[other+1];b++) {
+                check(cellAgents[a],cellAgents[b],limit,inclusive,visitor);
+            }
+        }
+    }
+
+    /**
+     * Visit a pair if the agents are within the squared distance
+     */
+    private void check(int i, int j, double limit, boolean inclusive,
+                       PairVisitor visitor) {
+        double xDistance = (double)x[j]-x[i];
+        double yDistance = (double)y[j]-y[i];
+        double squared = xDistance*xDistance + yDistance*yDistance;
+        if(inclusive ? squared<=limit : squared<limit) {
+            visitor.visit(Math.min(i,j),Math.max(i,j));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package simulation;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class runs the headless engine for every combination
+ * of the values given on the sweep lines of a config file.
+ * A sweep line is "sweep key values", where values is a comma
+ * separated list of what would follow the key on its own
+ * line, and a single number item can be a range from:to:step.
+ * For example "sweep recover 0.8:0.95:0.05" or
+ * "sweep grid 10 10, 20 20".
+ * The points are run on a fork join pool. Points with the same
+ * placement options use the same agent positions, and points
+ * that also have the same exposure distance use the same
+ * contact graph, so it is only built once.
+ * The results are kept in one column per measure and printed
+ * as one table with a row per point.
+ */
+public class Sweep {
+    private static final String[] MEASURES = {"days","peak_sick",
+            "peak_day","sick","dead","vulnerable","immune"};
+
+    private final Main config;
+    private final List<String> keys = new ArrayList<>();
+    private final List<List<String>> values = new ArrayList<>();
+    private final int points;
+    //results, one column per measure with a row per point
+    private final int[][] columns;
+
+    //positions by placement, contact graphs by placement and distance
+    private final Map<String,Population> placements =
+            new ConcurrentHashMap<>();
+    private final Map<String,ContactGraph> graphs = new ConcurrentHashMap<>();
+
+    /**
+     * Points of the sweep, split in halves until one is left
+     */
+    private class Points extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        Points(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from<=1) {
+                if(from<to) {
+                    runPoint(from);
+                }
+                return;
+            }
+            int middle = (from+to)/2;
+            invokeAll(new Points(from,middle),new Points(middle,to));
+        }
+    }
+
+    /**
+     * Constructor for the sweep, reads the sweep lines
+     * @param config the parsed config file with sweep lines
+     */
+    public Sweep(Main config) {
+        this.config = config;
+        int count = 1;
+        for(String line:config.getSweeps()) {
+            String[] words = line.trim().split(" ",3);
+            if(words.length<3) {
+                throw new IllegalArgumentException("no values: " + line);
+            }
+            List<String> list = new ArrayList<>();
+            for(String item:words[2].split(",")) {
+                expand(item.trim(),list);
+            }
+            keys.add(words[1]);
+            values.add(list);
+            count *= list.size();
+        }
+        points = count;
+        columns = new int[MEASURES.length][points];
+    }
+
+    /**
+     * Add the values of a sweep item to a list
+     * @param item a value, or a range from:to:step
+     * @param list the list to add to
+     */
+    private static void expand(String item, List<String> list) {
+        String[] range = item.split(":");
+        if(item.contains(" ") || range.length!=3) {
+            list.add(item);
+            return;
+        }
+        //BigDecimal so 0.8:0.95:0.05 gives 0.95 and not 0.9499999
+        BigDecimal from = new BigDecimal(range[0]);
+        BigDecimal to = new BigDecimal(range[1]);
+        BigDecimal step = new BigDecimal(range[2]);
+        if(step.signum()<=0) {
+            throw new IllegalArgumentException("step must be positive: "
+                                                + item);
+        }
+        if(from.compareTo(to)>0) {
+            throw new IllegalArgumentException("empty range, from is " +
+                                               "greater than to: " + item);
+        }
+        for(BigDecimal v=from;v.compareTo(to)<=0;v=v.add(step)) {
+            list.add(v.stripTrailingZeros().toPlainString());
+        }
+    }
+
+    /**
+     * Return the number of points of the sweep
+     * @return points
+     */
+    public int size() {
+        return points;
+    }
+
+    /**
+     * Return the value of a swept key at a point
+     * @param point the point number
+     * @param k the key number
+     * @return the value
+     */
+    private String valueAt(int point, int k) {
+        //points count through the last key fastest
+        for(int j=keys.size()-1;j>k;j--) {
+            point /= values.get(j).size();
+        }
+        return values.get(k).get(point%values.get(k).size());
+    }
+
+    /**
+     * Run all points of the sweep
+     * @param threads the parallelism of the fork join pool
+     */
+    public void run(int threads) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1,threads));
+        try {
+            pool.invoke(new Points(0,points));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run the engine for one point and record its results
+     * @param point the point number
+     */
+    private void runPoint(int point) {
+        Main pointConfig = new Main();
+        for(String line:config.getLines()) {
+            pointConfig.configure(line);
+        }
+        //every point has the same seed, unless seed is swept
+        pointConfig.configure("seed " + config.getSeed());
+        for(int k=0;k<keys.size();k++) {
+            pointConfig.configure(keys.get(k) + " " + valueAt(point,k));
+        }
+        String placement = placementKey(pointConfig);
+        String graph = placement + " " + pointConfig.getExposureDistance() +
+                " " + pointConfig.isHalfGraph() + " " +
+                pointConfig.getContactsFile();
+        Population layout = placements.computeIfAbsent(placement, key -> {
+            //placing the agents also builds the graph of this point
+            Simulation placed = new Simulation(pointConfig);
+            graphs.putIfAbsent(graph,placed.getContacts());
+            return placed.getPopulation();
+        });
+        ContactGraph contacts = graphs.computeIfAbsent(graph,
+                key -> buildGraph(pointConfig,layout));
+        Simulation simulation = new Simulation(pointConfig,layout,contacts,
+                                                pointConfig.getSeed());
+        Counters counters = simulation.getCounters();
+        int[] peak = new int[2];
+        simulation.addListener(new SimulationListener() {
+            @Override
+            public void transition(int agentID, int day, int from, int to) {
+            }
+
+            @Override
+            public void dayEnded(int day) {
+                int sick = counters.snapshot().getSick();
+                if(sick>peak[0]) {
+                    peak[0] = sick;
+                    peak[1] = day;
+                }
+            }
+        });
+        simulation.seed();
+        simulation.run(pointConfig.getMaxDays());
+        Counters.Snapshot end = counters.snapshot();
+        columns[0][point] = simulation.getDay();
+        columns[1][point] = peak[0];
+        columns[2][point] = peak[1];
+        columns[3][point] = end.getSick();
+        columns[4][point] = end.getDead();
+        columns[5][point] = end.getVulnerable();
+        columns[6][point] = end.getImmune();
+    }
+
+    /**
+     * Return the options that decide where agents are placed.
+     * The grid positions also depend on the exposure distance,
+     * random positions on the seed.
+     * @param point the config of a point
+     * @return the placement key
+     */
+    private static String placementKey(Main point) {
+        if(point.getPopulationFile()!=null) {
+            return "population " + point.getPopulationFile() + " " +
+                    point.isPopulationStates();
+        }
+        if(point.isGrid()) {
+            return "grid " + point.getRows() + " " + point.getColumns() +
+                    " " + point.getExposureDistance();
+        }
+        if(point.isRandomGrid()) {
+            return "randomgrid " + point.getRows() + " " +
+                    point.getColumns() + " " + point.getN() + " " +
+                    point.getWidth() + " " + point.getHeight() + " " +
+                    point.getSeed();
+        }
+        return "random " + point.getN() + " " + point.getWidth() + " " +
+                point.getHeight() + " " + point.getSeed();
+    }
+
+    /**
+     * Build the contact graph of a placement for a point
+     * @param point the config of the point
+     * @param layout the agent positions
+     * @return the contact graph
+     */
+    private static ContactGraph buildGraph(Main point, Population layout) {
+        if(point.getContactsFile()!=null) {
+            return ContactFile.read(point.getContactsFile(),layout.size(),
+                                    point.isHalfGraph(),point.getWorkers());
+        }
+        double distance = point.getExposureDistance();
+        SpatialIndex index = new SpatialIndex(layout.xs(),layout.ys(),
+                                                layout.size(),distance);
+        return ContactGraph.build(index,layout.size(),distance,
+                                    !point.isRandom(),point.isHalfGraph());
+    }
+
+    /**
+     * Print the results as comma separated values, the swept
+     * keys first and then the measures of each point
+     * @param out the stream to print to
+     */
+    public void print(PrintStream out) {
+        StringBuilder line = new StringBuilder();
+        for(String key:keys) {
+            line.append(key).append(',');
+        }
+        line.append(String.join(",",MEASURES));
+        out.println(line);
+        for(int point=0;point<points;point++) {
+            line.setLength(0);
+            for(int k=0;k<keys.size();k++) {
+                line.append(valueAt(point,k)).append(',');
+            }
+            for(int m=0;m<MEASURES.length;m++) {
+                if(m>0) {
+                    line.append(',');
+                }
+                line.append(columns[m][point]);
+            }
+            out.println(line);
+        }
+    }
+}
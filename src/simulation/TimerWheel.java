@@ -0,0 +1,94 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the agents waiting for a transition,
+ * in one bucket per day of a wheel of days. An agent due
+ * on a day goes into bucket day%slots, so scheduling is an
+ * append to a primitive int bucket and firing a day is
+ * walking one bucket, both O(1) per agent, with no object
+ * and no thread per pending transition.
+ * The wheel has one more slot than the longest delay that
+ * is scheduled, so a bucket never holds two different days
+ * and a single level is enough.
+ */
+public class TimerWheel {
+    private final int[][] buckets;
+    private final int[] counts;
+    //number of agents in all buckets
+    private int size = 0;
+
+    /**
+     * Constructor for an empty wheel
+     * @param maxDelay the longest delay, in days, that
+     *                 will be scheduled
+     */
+    public TimerWheel(int maxDelay) {
+        int slots = Math.max(1,maxDelay)+1;
+        buckets = new int[slots][];
+        counts = new int[slots];
+        for(int s=0;s<slots;s++) {
+            buckets[s] = new int[16];
+        }
+    }
+
+    /**
+     * Schedule an agent for a day, at most maxDelay days ahead
+     * @param agent the agent index
+     * @param day the day of its transition
+     */
+    public void schedule(int agent, int day) {
+        int slot = day%buckets.length;
+        if(counts[slot]==buckets[slot].length) {
+            buckets[slot] = Arrays.copyOf(buckets[slot],2*counts[slot]);
+        }
+        buckets[slot][counts[slot]++] = agent;
+        size++;
+    }
+
+    /**
+     * Return the agents due on a day, in the order they were
+     * scheduled. Only the first count(day) entries are agents.
+     * @param day the day
+     * @return the bucket of the day
+     */
+    public int[] due(int day) {
+        return buckets[day%buckets.length];
+    }
+
+    /**
+     * Return the number of agents due on a day
+     * @param day the day
+     * @return count
+     */
+    public int count(int day) {
+        return counts[day%buckets.length];
+    }
+
+    /**
+     * Empty the bucket of a day once its agents were handled
+     * @param day the day
+     */
+    public void clear(int day) {
+        int slot = day%buckets.length;
+        size -= counts[slot];
+        counts[slot] = 0;
+    }
+
+    /**
+     * Empty all buckets, keeping their arrays
+     */
+    public void reset() {
+        Arrays.fill(counts,0);
+        size = 0;
+    }
+
+    /**
+     * Return the number of agents waiting for a transition
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+}
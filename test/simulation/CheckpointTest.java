@@ -0,0 +1,136 @@
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class checks that a run resumed from a Checkpoint goes
+ * on exactly like the run it was saved from: both are stepped
+ * from day 20 to the end of the outbreak, and on every day
+ * their counters must be equal, and at the end the state of
+ * every agent. It is checked for a full graph of random
+ * positions and for a half graph of a grid.
+ * Usage: java simulation.CheckpointTest, exits with 1 on a failure
+ */
+public class CheckpointTest {
+    private static final int SAVED_DAY = 20;
+    private static int failures = 0;
+
+    /**
+     * Save and resume two runs and compare them with the originals
+     * @param args not used
+     * @throws IOException if the checkpoint file can't be made
+     */
+    public static void main(String[] args) throws IOException {
+        Main random = new Main();
+        random.configure("dimensions 1400 1400");
+        random.configure("random 5000");
+        random.configure("exposuredistance 20");
+        random.configure("initialsick 50");
+        random.configure("seed 7");
+        roundTrip(random,"random");
+
+        Main grid = new Main();
+        grid.configure("grid 70 70");
+        grid.configure("exposuredistance 20");
+        grid.configure("initialsick 10");
+        grid.configure("initialimmune 100");
+        grid.configure("graph half");
+        grid.configure("seed 11");
+        roundTrip(grid,"half grid");
+
+        if(failures>0) {
+            System.out.println(failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("ok");
+    }
+
+    /**
+     * Run a config to SAVED_DAY, save and read it back, then run
+     * the original and the resumed simulation side by side
+     * @param config the config of both runs
+     * @param what the config, for the failure messages
+     * @throws IOException if the checkpoint file can't be made
+     */
+    private static void roundTrip(Main config, String what)
+            throws IOException {
+        Simulation original = new Simulation(config);
+        original.seed();
+        original.run(SAVED_DAY);
+        check(!original.isFinished(),what + " still spreading on day " +
+                SAVED_DAY);
+
+        File file = File.createTempFile("checkpoint",".bin");
+        file.deleteOnExit();
+        Checkpoint.write(original,file.getPath());
+        Simulation resumed = Checkpoint.read(config,file.getPath());
+
+        check(resumed.getDay()==SAVED_DAY,what + " resumed on day " +
+                resumed.getDay());
+        check(resumed.getSeed()==original.getSeed(),what + " seed");
+        check(resumed.getContacts().edgeCount()==
+                original.getContacts().edgeCount(),what + " edges");
+        compare(original,resumed,what);
+        while(!original.isFinished() || !resumed.isFinished()) {
+            if(original.isFinished() || resumed.isFinished()) {
+                check(false,what + " only one run ended on day " +
+                        original.getDay());
+                return;
+            }
+            original.step();
+            resumed.step();
+            compare(original,resumed,what);
+        }
+        for(int i=0;i<original.size();i++) {
+            if(original.getState(i)!=resumed.getState(i)) {
+                check(false,what + " agent " + i + " ended in state " +
+                        resumed.getState(i) + " instead of " +
+                        original.getState(i));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check that two runs are on the same day with the same counters
+     * @param original the run that was saved
+     * @param resumed the run read back
+     * @param what the config, for the failure message
+     */
+    private static void compare(Simulation original, Simulation resumed,
+                                String what) {
+        Counters.Snapshot a = original.getCounters().snapshot();
+        Counters.Snapshot b = resumed.getCounters().snapshot();
+        boolean same = original.getDay()==resumed.getDay() &&
+                a.getDay()==b.getDay();
+        for(int c=0;c<4;c++) {
+            same &= a.get(c)==b.get(c);
+        }
+        check(same,what + " differs on day " + original.getDay() + ": " +
+                str(b) + " instead of " + str(a));
+    }
+
+    /**
+     * Count and print a failed check
+     * @param ok whether the check passed
+     * @param message what failed
+     */
+    private static void check(boolean ok, String message) {
+        if(!ok) {
+            failures++;
+            System.out.println("FAILED " + message);
+        }
+    }
+
+    /**
+     * Format the counters of a snapshot
+     * @param counts the snapshot
+     * @return the counters as text
+     */
+    private static String str(Counters.Snapshot counts) {
+        return "vulnerable " + counts.getVulnerable() + " sick " +
+                counts.getSick() + " immune " + counts.getImmune() +
+                " dead " + counts.getDead();
+    }
+}
@@ -0,0 +1,123 @@
+package simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * This class checks the percentile bands of an Ensemble on a
+ * population far larger than a histogram could hold exactly:
+ * on every day and for every counter, and for the peak, the
+ * bands must be values between the lowest and the highest
+ * replica with p5 <= mean <= p95 and p5 <= p50 <= p95, and
+ * on day 0 no replica has dead agents, so the mean and all
+ * percentiles of the dead band are zero.
+ * Replicas on a shared contact file graph must pick their own
+ * initial agents, so their peak band has a non-zero width.
+ * Usage: java simulation.EnsembleTest, exits with 1 on a failure
+ */
+public class EnsembleTest {
+    private static int failures = 0;
+
+    /**
+     * Run an ensemble of a 5000 agent population and check its bands
+     * @param args not used
+     * @throws IOException if the contact file can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        Main config = new Main();
+        config.configure("dimensions 1400 1400");
+        config.configure("random 5000");
+        config.configure("exposuredistance 20");
+        config.configure("initialsick 50");
+        config.configure("days 200");
+        config.configure("seed 7");
+        Ensemble ensemble = new Ensemble(config,40);
+        ensemble.run(Runtime.getRuntime().availableProcessors());
+
+        check(ensemble.getMerged()==40,"all 40 replicas merged");
+        double[] day0 = ensemble.getBand(0,Counters.DEAD);
+        check(day0[0]==0 && day0[1]==0 && day0[2]==0 && day0[3]==0,
+                "no dead on day 0: " + str(day0));
+        for(int d=0;d<ensemble.getDays();d++) {
+            for(int s=0;s<4;s++) {
+                checkBand(ensemble.getBand(d,s),"day " + d + " counter " + s);
+            }
+        }
+        double[] peak = ensemble.getPeakBand();
+        checkBand(peak,"peak sick");
+        check(peak[1]>0,"the epidemic spreads: " + str(peak));
+        contactFileSpread();
+        if(failures>0) {
+            System.out.println(failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("ok, peak sick " + str(peak));
+    }
+
+    /**
+     * Run an ensemble on a random contact file graph and check
+     * that the replicas don't all have the same outbreak
+     * @throws IOException if the contact file can't be written
+     */
+    private static void contactFileSpread() throws IOException {
+        int n = 5000;
+        File edges = File.createTempFile("edges",".bin");
+        edges.deleteOnExit();
+        SplittableRandom random = new SplittableRandom(3);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(edges)))) {
+            for(int e=0;e<2*n;e++) {
+                out.writeInt(random.nextInt(n));
+                out.writeInt(random.nextInt(n));
+            }
+        }
+        Main config = new Main();
+        config.configure("random " + n);
+        config.configure("contacts " + edges.getPath());
+        config.configure("initialsick 5");
+        config.configure("seed 7");
+        Ensemble ensemble = new Ensemble(config,10);
+        ensemble.run(Runtime.getRuntime().availableProcessors());
+        double[] peak = ensemble.getPeakBand();
+        checkBand(peak,"contact file peak sick");
+        check(peak[1]<peak[3],"contact file replicas differ: " + str(peak));
+    }
+
+    /**
+     * Check that the percentiles of a band are ordered around its mean
+     * @param band mean, p5, p50 and p95
+     * @param what the band, for the failure message
+     */
+    private static void checkBand(double[] band, String what) {
+        check(band[1]<=band[0] && band[0]<=band[3],
+                what + " mean outside p5 to p95: " + str(band));
+        check(band[1]<=band[2] && band[2]<=band[3],
+                what + " percentiles out of order: " + str(band));
+    }
+
+    /**
+     * Count and print a failed check
+     * @param ok whether the check passed
+     * @param message what failed
+     */
+    private static void check(boolean ok, String message) {
+        if(!ok) {
+            failures++;
+            System.out.println("FAILED " + message);
+        }
+    }
+
+    /**
+     * Format a band
+     * @param band mean, p5, p50 and p95
+     * @return the band as text
+     */
+    private static String str(double[] band) {
+        return "mean " + band[0] + " p5 " + band[1] + " p50 " + band[2] +
+                " p95 " + band[3];
+    }
+}
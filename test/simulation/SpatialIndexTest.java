@@ -0,0 +1,157 @@
+package simulation;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * This class checks the contact graphs built with a SpatialIndex
+ * against the pairwise loops they replaced, which compare every
+ * agent with every other one. The neighbors of every agent must
+ * be the same in the full and in the half graph, for inclusive
+ * and exclusive distances, on a grid whose neighbors are exactly
+ * the distance apart, on random positions, and on positions
+ * spread so far that the index has to grow its cells.
+ * Usage: java simulation.SpatialIndexTest, exits with 1 on a failure
+ */
+public class SpatialIndexTest {
+    private static int failures = 0;
+
+    /**
+     * Compare the graphs of a few placements with brute force
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        int side = 40;
+        float[] gridX = new float[side*side];
+        float[] gridY = new float[side*side];
+        for(int i=0;i<side;i++) {
+            for(int j=0;j<side;j++) {
+                gridX[i*side+j] = i*20 + 10;
+                gridY[i*side+j] = j*20 + 10;
+            }
+        }
+        for(double distance:new double[] {20, 40, 28.5}) {
+            compare(gridX,gridY,distance,"grid");
+        }
+
+        SplittableRandom random = new SplittableRandom(5);
+        int n = 3000;
+        float[] x = new float[n];
+        float[] y = new float[n];
+        for(int i=0;i<n;i++) {
+            x[i] = (float)random.nextDouble(1000);
+            y[i] = (float)random.nextDouble(1000);
+        }
+        //a few agents on top of each other and on a cell border
+        x[1] = x[0];
+        y[1] = y[0];
+        x[2] = x[0] + 20;
+        y[2] = y[0];
+        for(double distance:new double[] {20, 7.5, 0.5}) {
+            compare(x,y,distance,"random");
+        }
+
+        float[] farX = new float[500];
+        float[] farY = new float[500];
+        for(int i=0;i<farX.length;i++) {
+            farX[i] = (float)random.nextDouble(100000);
+            farY[i] = (float)random.nextDouble(100000);
+        }
+        compare(farX,farY,20,"spread");
+
+        if(failures>0) {
+            System.out.println(failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("ok");
+    }
+
+    /**
+     * Build the full and the half graph of a placement for
+     * inclusive and exclusive distances and compare each
+     * with the neighbors found by brute force
+     * @param x the x positions
+     * @param y the y positions
+     * @param distance the exposure distance
+     * @param what the placement, for the failure messages
+     */
+    private static void compare(float[] x, float[] y, double distance,
+                                String what) {
+        int n = x.length;
+        SpatialIndex index = new SpatialIndex(x,y,n,distance);
+        for(boolean inclusive:new boolean[] {true, false}) {
+            String graph = what + " distance " + distance +
+                    (inclusive ? " inclusive" : " exclusive");
+            ContactGraph full = ContactGraph.build(index,n,distance,
+                                                    inclusive,false);
+            ContactGraph half = ContactGraph.build(index,n,distance,
+                                                    inclusive,true);
+            int edges = 0;
+            for(int i=0;i<n;i++) {
+                int[] expected = bruteForce(x,y,i,distance,inclusive,0);
+                edges += expected.length;
+                check(Arrays.equals(neighbors(full,i),expected),
+                        graph + " full graph neighbors of agent " + i);
+                check(Arrays.equals(neighbors(half,i),
+                        bruteForce(x,y,i,distance,inclusive,i+1)),
+                        graph + " half graph neighbors of agent " + i);
+            }
+            check(full.edgeCount()==edges,graph + " full graph edges");
+            check(half.edgeCount()==edges/2,graph + " half graph edges");
+        }
+    }
+
+    /**
+     * Find the neighbors of an agent like the pairwise loops did,
+     * comparing it with every agent from first on
+     * @param x the x positions
+     * @param y the y positions
+     * @param i the agent
+     * @param distance the exposure distance
+     * @param inclusive whether agents exactly distance apart
+     *                  are neighbors
+     * @param first the first agent to compare with
+     * @return the neighbors, sorted
+     */
+    private static int[] bruteForce(float[] x, float[] y, int i,
+                                    double distance, boolean inclusive,
+                                    int first) {
+        int[] found = new int[x.length];
+        int count = 0;
+        for(int j=first;j<x.length;j++) {
+            double xDistance = (double)x[j]-x[i];
+            double yDistance = (double)y[j]-y[i];
+            double apart = Math.sqrt((yDistance*yDistance)+
+                                        (xDistance*xDistance));
+            if(j!=i && (inclusive ? apart<=distance : apart<distance)) {
+                found[count++] = j;
+            }
+        }
+        return Arrays.copyOf(found,count);
+    }
+
+    /**
+     * Return the targets of an agent in a graph
+     * @param graph the contact graph
+     * @param i the agent
+     * @return the neighbors, sorted
+     */
+    private static int[] neighbors(ContactGraph graph, int i) {
+        int[] targets = Arrays.copyOfRange(graph.getTargets(),
+                graph.getOffsets()[i],graph.getOffsets()[i+1]);
+        Arrays.sort(targets);
+        return targets;
+    }
+
+    /**
+     * Count and print a failed check
+     * @param ok whether the check passed
+     * @param message what failed
+     */
+    private static void check(boolean ok, String message) {
+        if(!ok) {
+            failures++;
+            System.out.println("FAILED " + message);
+        }
+    }
+}